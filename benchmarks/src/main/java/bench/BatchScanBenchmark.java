@@ -0,0 +1,63 @@
+package bench;
+
+import data.LogParser;
+import data.LogParserOptions;
+import data.Status;
+import org.openjdk.jmh.annotations.*;
+import query.BatchRequest;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A batch of per-task counts and set requests answered by one scan of the range, with the
+ * Vector API block kernel and with the scalar one. The fork adds the incubator module, so
+ * {@code kernel=scalar} only differs by {@code -Ddata.scalarScan=true}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g", "--add-modules", "jdk.incubator.vector"})
+public class BatchScanBenchmark {
+    @Param({"1000000"})
+    public long lines;
+
+    @Param({"0.1", "1"})
+    public double selectivity;
+
+    @Param({"vector", "scalar"})
+    public String kernel;
+
+    private LogParser parser;
+    private List<BatchRequest> requests;
+    private Date after;
+    private Date before;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // Read when the first scan loads the kernel, so before any query.
+        System.setProperty("data.scalarScan", String.valueOf(kernel.equals("scalar")));
+        parser = new LogParser(BenchmarkData.logDir(lines), LogParserOptions.defaults()
+                .withParallelism(Runtime.getRuntime().availableProcessors()));
+        requests = new ArrayList<>();
+        for (int task = 0; task < 20; task++) {
+            requests.add(BatchRequest.numberOfAttemptToSolveTask(task));
+            requests.add(BatchRequest.numberOfSuccessfulAttemptToSolveTask(task));
+        }
+        requests.add(BatchRequest.ipsForStatus(Status.FAILED));
+        requests.add(BatchRequest.usersForIP(LogGenerator.homeIP(0)));
+        requests.add(BatchRequest.dateWhenUserSolvedTask(LogGenerator.userName(0), 3));
+        after = BenchmarkData.after(selectivity);
+        before = BenchmarkData.before(selectivity);
+    }
+
+    @Benchmark
+    public Map<BatchRequest, Object> executeBatch() {
+        return parser.executeBatch(requests, after, before);
+    }
+}
@@ -0,0 +1,76 @@
+package bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Generated log directories shared by the benchmarks. A directory is generated once per size under
+ * {@code -Dbench.data} (default {@code target/bench-data}) and reused by later runs.
+ */
+final class BenchmarkData {
+    private static final int LINES_PER_FILE = 5_000_000;
+    private static final String COMPLETE = ".complete";
+
+    private BenchmarkData() {
+    }
+
+    static synchronized Path logDir(long lines) {
+        Path dir = Paths.get(System.getProperty("bench.data", "target/bench-data"), Long.toString(lines));
+        if (Files.exists(dir.resolve(COMPLETE))) {
+            return dir;
+        }
+        try {
+            int files = (int) Math.max(1, (lines + LINES_PER_FILE - 1) / LINES_PER_FILE);
+            new LogGenerator(42).generate(dir, lines, files);
+            // Kept outside the log files: LogParser only reads *.log, *.log.gz and *.log.zst.
+            Files.createFile(dir.resolve(COMPLETE));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return dir;
+    }
+
+    /**
+     * The files of {@link #logDir} compressed to {@code .log.gz}, as log rotation leaves them.
+     */
+    static synchronized Path gzipLogDir(long lines) {
+        Path plain = logDir(lines);
+        Path dir = plain.resolveSibling(lines + "-gz");
+        if (Files.exists(dir.resolve(COMPLETE))) {
+            return dir;
+        }
+        try (Stream<Path> files = Files.list(plain)) {
+            Files.createDirectories(dir);
+            for (Path file : (Iterable<Path>) files.filter(file -> file.toString().endsWith(".log"))::iterator) {
+                try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(dir.resolve(file.getFileName() + ".gz")))) {
+                    Files.copy(file, out);
+                }
+            }
+            Files.createFile(dir.resolve(COMPLETE));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return dir;
+    }
+
+    /**
+     * Start of a range covering {@code selectivity} (0..1] of the generated dates, centered in the year.
+     */
+    static Date after(double selectivity) {
+        long start = LogGenerator.START.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long width = (long) (LogGenerator.SPAN_MILLIS * selectivity);
+        return new Date(start + (LogGenerator.SPAN_MILLIS - width) / 2);
+    }
+
+    static Date before(double selectivity) {
+        return new Date(after(selectivity).getTime() + (long) (LogGenerator.SPAN_MILLIS * selectivity));
+    }
+}
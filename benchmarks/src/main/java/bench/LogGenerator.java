@@ -0,0 +1,167 @@
+package bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Random;
+
+/**
+ * Writes synthetic logs in the {@code example.log} format: {@code ip, user, date, event, status}
+ * separated by tabs, in date order. Users and IPs are drawn from Zipf distributions so a few of
+ * them dominate, as in real traffic; every user mostly sticks to a handful of IPs.
+ * <p>
+ * Usage: {@code LogGenerator <dir> <lines> [files] [seed]}
+ */
+public final class LogGenerator {
+    public static final int USERS = 20_000;
+    public static final int IPS = 50_000;
+    public static final int TASKS = 50;
+    /**
+     * Generated dates cover one year starting at {@link #START}.
+     */
+    public static final LocalDateTime START = LocalDateTime.of(2021, 1, 1, 0, 0, 0);
+    public static final long SPAN_MILLIS = 365L * 24 * 60 * 60 * 1000;
+
+    private static final double SKEW = 1.1;
+    private static final String[] EVENTS = {"LOGIN", "DOWNLOAD_PLUGIN", "WRITE_MESSAGE", "SOLVE_TASK", "DONE_TASK"};
+    private static final int[] EVENT_WEIGHTS = {30, 10, 25, 25, 10};
+    private static final String[] STATUSES = {"OK", "FAILED", "ERROR"};
+    private static final int[] STATUS_WEIGHTS = {90, 7, 3};
+
+    private final Random random;
+    private final double[] userCdf = zipf(USERS);
+    private final double[] ipCdf = zipf(IPS);
+
+    public LogGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: LogGenerator <dir> <lines> [files] [seed]");
+            System.exit(1);
+        }
+        Path dir = Paths.get(args[0]);
+        long lines = Long.parseLong(args[1]);
+        int files = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 42;
+        new LogGenerator(seed).generate(dir, lines, files);
+    }
+
+    /**
+     * Writes {@code lines} lines spread over {@code files} files named {@code part-NNN.log}.
+     */
+    public void generate(Path dir, long lines, int files) throws IOException {
+        Files.createDirectories(dir);
+        long start = START.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        double step = (double) SPAN_MILLIS / lines;
+        long line = 0;
+        StringBuilder builder = new StringBuilder(128);
+        for (int file = 0; file < files; file++) {
+            long end = lines * (file + 1) / files;
+            Path path = dir.resolve(String.format("part-%03d.log", file));
+            try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+                for (; line < end; line++) {
+                    builder.setLength(0);
+                    appendLine(builder, start + (long) (line * step));
+                    writer.append(builder);
+                }
+            }
+        }
+    }
+
+    private void appendLine(StringBuilder builder, long millis) {
+        int user = sample(userCdf);
+        // Most requests of a user come from its home IP, the rest from anywhere.
+        int ip = random.nextInt(10) < 8 ? homeIPId(user) : sample(ipCdf);
+        String event = EVENTS[weighted(EVENT_WEIGHTS)];
+        appendIP(builder, ip).append('\t');
+        builder.append(userName(user)).append('\t');
+        appendDate(builder, LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault()));
+        builder.append('\t').append(event);
+        if (event.endsWith("_TASK")) {
+            builder.append(' ').append(1 + random.nextInt(TASKS));
+        }
+        builder.append('\t').append(STATUSES[weighted(STATUS_WEIGHTS)]).append('\n');
+    }
+
+    /**
+     * Name of the user with popularity rank {@code rank}; rank 0 is the most active user.
+     */
+    public static String userName(int rank) {
+        return "User " + rank;
+    }
+
+    /**
+     * The IP that the user with popularity rank {@code rank} logs in from most of the time.
+     */
+    public static String homeIP(int rank) {
+        return appendIP(new StringBuilder(15), homeIPId(rank)).toString();
+    }
+
+    private static int homeIPId(int rank) {
+        return (int) ((rank * 2654435761L) % IPS);
+    }
+
+    private static StringBuilder appendIP(StringBuilder builder, int id) {
+        return builder.append(10).append('.').append(id >>> 16 & 0xff).append('.')
+                .append(id >>> 8 & 0xff).append('.').append(id & 0xff);
+    }
+
+    private static void appendDate(StringBuilder builder, LocalDateTime date) {
+        pad(builder, date.getDayOfMonth()).append('.');
+        pad(builder, date.getMonthValue()).append('.');
+        builder.append(date.getYear()).append(' ').append(date.getHour()).append(':');
+        pad(builder, date.getMinute()).append(':');
+        pad(builder, date.getSecond());
+    }
+
+    private static StringBuilder pad(StringBuilder builder, int value) {
+        return (value < 10 ? builder.append('0') : builder).append(value);
+    }
+
+    private int sample(double[] cdf) {
+        double u = random.nextDouble();
+        int low = 0;
+        int high = cdf.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cdf[mid] < u) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int weighted(int[] weights) {
+        int u = random.nextInt(100);
+        for (int i = 0; i < weights.length; i++) {
+            u -= weights[i];
+            if (u < 0) {
+                return i;
+            }
+        }
+        return weights.length - 1;
+    }
+
+    private static double[] zipf(int n) {
+        double[] cdf = new double[n];
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += 1 / Math.pow(i + 1, SKEW);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < n; i++) {
+            cdf[i] /= sum;
+        }
+        return cdf;
+    }
+}
@@ -0,0 +1,67 @@
+package bench;
+
+import data.LogParser;
+import data.LogParserOptions;
+import data.Status;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The same queries over records on the heap and off it, to see what reading the columns and
+ * posting lists from native memory costs. Run with {@code -prof gc} to compare the heap the two
+ * leave behind after loading.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g", "--add-modules", "jdk.incubator.foreign"})
+public class OffHeapStoreBenchmark {
+    @Param({"1000000"})
+    public long lines;
+
+    @Param({"0.01", "1"})
+    public double selectivity;
+
+    @Param({"false", "true"})
+    public boolean offHeap;
+
+    private LogParser parser;
+    private Date after;
+    private Date before;
+    private String hotUser;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        parser = new LogParser(BenchmarkData.logDir(lines), LogParserOptions.defaults()
+                .withParallelism(Runtime.getRuntime().availableProcessors())
+                .withOffHeapStore(offHeap));
+        after = BenchmarkData.after(selectivity);
+        before = BenchmarkData.before(selectivity);
+        hotUser = LogGenerator.userName(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        parser.close();
+    }
+
+    @Benchmark
+    public Set<String> ipsForUser() {
+        return parser.getIPsForUser(hotUser, after, before);
+    }
+
+    @Benchmark
+    public Set<String> ipsForStatus() {
+        return parser.getIPsForStatus(Status.FAILED, after, before);
+    }
+
+    @Benchmark
+    public int numberOfAttemptToSolveTask() {
+        return parser.getNumberOfAttemptToSolveTask(3, after, before);
+    }
+}
@@ -0,0 +1,130 @@
+package bench;
+
+import data.Event;
+import data.LogParser;
+import data.LogParserOptions;
+import data.Status;
+import org.openjdk.jmh.annotations.*;
+import query.HeavyHitter;
+import query.TaskFunnel;
+import query.UserSessions;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Representative methods of every query interface over a range that covers {@code selectivity} of
+ * the generated dates, with serial and parallel query execution. The hot user and IP are the most
+ * frequent ones; the cold user is rare.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class QueryBenchmark {
+    @Param({"1000000"})
+    public long lines;
+
+    @Param({"0.001", "0.01", "0.1", "1"})
+    public double selectivity;
+
+    /**
+     * 0 uses one query thread per available processor.
+     */
+    @Param({"1", "0"})
+    public int queryParallelism;
+
+    private LogParser parser;
+    private Date after;
+    private Date before;
+    private String hotUser;
+    private String coldUser;
+    private String hotIP;
+    private String qlQuery;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        parser = new LogParser(BenchmarkData.logDir(lines), LogParserOptions.defaults()
+                .withParallelism(Runtime.getRuntime().availableProcessors())
+                .withQueryParallelism(queryParallelism > 0 ? queryParallelism : Runtime.getRuntime().availableProcessors()));
+        after = BenchmarkData.after(selectivity);
+        before = BenchmarkData.before(selectivity);
+        hotUser = LogGenerator.userName(0);
+        coldUser = LogGenerator.userName(LogGenerator.USERS / 2);
+        hotIP = LogGenerator.homeIP(0);
+        SimpleDateFormat format = new SimpleDateFormat("d.M.yyyy H:m:s");
+        qlQuery = "get ip for user = \"" + hotUser + "\" and date between \""
+                + format.format(after) + "\" and \"" + format.format(before) + "\"";
+    }
+
+    @Benchmark
+    public int ipNumberOfUniqueIPs() {
+        return parser.getNumberOfUniqueIPs(after, before);
+    }
+
+    @Benchmark
+    public Set<String> ipIPsForUser() {
+        return parser.getIPsForUser(hotUser, after, before);
+    }
+
+    @Benchmark
+    public int userNumberOfUsers() {
+        return parser.getNumberOfUsers(after, before);
+    }
+
+    @Benchmark
+    public Set<String> userUsersForIP() {
+        return parser.getUsersForIP(hotIP, after, before);
+    }
+
+    @Benchmark
+    public Set<String> userLoggedUsers() {
+        return parser.getLoggedUsers(after, before);
+    }
+
+    @Benchmark
+    public Set<Date> dateDatesForUserAndEvent() {
+        return parser.getDatesForUserAndEvent(coldUser, Event.LOGIN, after, before);
+    }
+
+    @Benchmark
+    public Date dateUserLoggedFirstTime() {
+        return parser.getDateWhenUserLoggedFirstTime(hotUser, after, before);
+    }
+
+    @Benchmark
+    public Map<Integer, Integer> eventAllSolvedTasks() {
+        return parser.getAllSolvedTasksAndTheirNumber(after, before);
+    }
+
+    @Benchmark
+    public int eventAttemptsToSolveTask() {
+        return parser.getNumberOfAttemptToSolveTask(7, after, before);
+    }
+
+    @Benchmark
+    public Map<Integer, TaskFunnel> analyticsTaskFunnels() {
+        return parser.getTaskFunnels(after, before);
+    }
+
+    @Benchmark
+    public Map<String, UserSessions> analyticsUserSessions() {
+        return parser.getUserSessions(after, before);
+    }
+
+    @Benchmark
+    public List<HeavyHitter> topKFailedIPs() {
+        return parser.getTopIPs(20, null, Status.FAILED, after, before);
+    }
+
+    @Benchmark
+    public Set<?> qlExecute() {
+        return parser.execute(qlQuery);
+    }
+}
@@ -0,0 +1,47 @@
+package bench;
+
+import data.LogParser;
+import data.LogParserOptions;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to build a {@link LogParser} over a generated directory, i.e. {@code readLogs} throughput.
+ * With {@code snapshot=true} the first invocation writes the snapshot and the measured ones load it;
+ * {@code gzip=true} reads the same records from {@code .log.gz} files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ReadLogsBenchmark {
+    @Param({"1000000"})
+    public long lines;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    @Param({"false", "true"})
+    public boolean snapshot;
+
+    @Param({"false", "true"})
+    public boolean gzip;
+
+    private Path logDir;
+    private LogParserOptions options;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        logDir = gzip ? BenchmarkData.gzipLogDir(lines) : BenchmarkData.logDir(lines);
+        options = LogParserOptions.defaults().withParallelism(parallelism).withSnapshot(snapshot);
+    }
+
+    @Benchmark
+    public LogParser readLogs() {
+        return new LogParser(logDir, options);
+    }
+}
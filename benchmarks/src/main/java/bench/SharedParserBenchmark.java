@@ -0,0 +1,94 @@
+package bench;
+
+import data.LogParser;
+import data.LogParserOptions;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One {@link LogParser} shared by all benchmark threads. {@code read} measures queries alone, run
+ * it with {@code -t 1}, {@code -t 2}, ... to see how reads scale with threads; {@code readWrite}
+ * runs the same queries while one thread keeps appending lines and refreshing, which the queries
+ * should not wait for.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class SharedParserBenchmark {
+    private static final String APPENDED_LINE = "127.0.0.1\tAmigo\t30.12.2021 16:08:13\tSOLVE_TASK 7\tOK\n";
+
+    @Param({"1000000"})
+    public long lines;
+
+    private Path logDir;
+    private Path appended;
+    private LogParser parser;
+    private Date after;
+    private Date before;
+    private String hotUser;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        // A copy, since the writer appends to the directory.
+        logDir = Files.createTempDirectory("shared-parser");
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(BenchmarkData.logDir(lines), "*.log")) {
+            for (Path file : files) {
+                Files.copy(file, logDir.resolve(file.getFileName()));
+            }
+        }
+        appended = logDir.resolve("appended.log");
+        Files.createFile(appended);
+        parser = new LogParser(logDir, LogParserOptions.defaults().withParallelism(Runtime.getRuntime().availableProcessors()));
+        after = BenchmarkData.after(0.1);
+        before = BenchmarkData.before(0.1);
+        hotUser = LogGenerator.userName(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(logDir)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(logDir);
+    }
+
+    @Benchmark
+    @Group("read")
+    public Set<String> readQueries() {
+        return query();
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(3)
+    public Set<String> readWriteQueries() {
+        return query();
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    public void readWriteIngest() {
+        try {
+            Files.write(appended, APPENDED_LINE.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        parser.refresh();
+    }
+
+    private Set<String> query() {
+        return parser.getIPsForUser(hotUser, after, before);
+    }
+}
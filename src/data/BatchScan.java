@@ -0,0 +1,184 @@
+package data;
+
+import query.BatchRequest;
+
+import java.util.*;
+
+/**
+ * Answers a batch of {@link BatchRequest}s that share one date range with a single pass over the
+ * rows of that range. The range is walked in blocks of {@link ScanKernel#BLOCK} rows; every request
+ * gets an accumulator that matches each block with its own {@link LogStore.Match} and takes the
+ * matching rows from the resulting bitmask. Counts only add up the bits.
+ */
+final class BatchScan {
+    private enum Projection {
+        IPS, USERS, DATES, FIRST_DATE, EVENTS, COUNT, TASKS
+    }
+
+    private final List<Accumulator> accumulators = new ArrayList<>();
+    private final long after;
+    private final long before;
+    private final GlobalDictionary ipDictionary;
+    private final GlobalDictionary userDictionary;
+
+    BatchScan(Collection<BatchRequest> requests, Date after, Date before, GlobalDictionary ipDictionary,
+              GlobalDictionary userDictionary) {
+        this.after = after == null ? Long.MIN_VALUE : after.getTime();
+        this.before = before == null ? Long.MAX_VALUE : before.getTime();
+        this.ipDictionary = ipDictionary;
+        this.userDictionary = userDictionary;
+        Set<BatchRequest> distinct = new LinkedHashSet<>(requests);
+        for (BatchRequest request : distinct) {
+            accumulators.add(accumulator(request, after, before));
+        }
+    }
+
+    Map<BatchRequest, Object> execute(List<LogStore> stores) {
+        for (LogStore store : stores) {
+            scan(store);
+        }
+        Map<BatchRequest, Object> results = new LinkedHashMap<>();
+        for (Accumulator accumulator : accumulators) {
+            results.put(accumulator.request, accumulator.result(ipDictionary, userDictionary));
+        }
+        return results;
+    }
+
+    private void scan(LogStore store) {
+        List<Accumulator> active = new ArrayList<>();
+        for (Accumulator accumulator : accumulators) {
+            if (accumulator.bind(store)) {
+                active.add(accumulator);
+            }
+        }
+        Accumulator[] bound = active.toArray(new Accumulator[0]);
+        int to = store.upperBound(before);
+        for (int from = store.lowerBound(after); from < to; from += ScanKernel.BLOCK) {
+            int end = Math.min(from + ScanKernel.BLOCK, to);
+            for (Accumulator accumulator : bound) {
+                accumulator.offer(store, from, end);
+            }
+        }
+    }
+
+    private static Accumulator accumulator(BatchRequest request, Date after, Date before) {
+        RowFilter range = RowFilter.between(after, before);
+        RowFilter forUser = RowFilter.forUser(request.getUser(), after, before);
+        RowFilter forIP = RowFilter.forIP(request.getIP(), after, before);
+        return switch (request.getKind()) {
+            case NUMBER_OF_UNIQUE_IPS -> new Accumulator(request, range, Projection.IPS, true);
+            case UNIQUE_IPS -> new Accumulator(request, range, Projection.IPS, false);
+            case IPS_FOR_USER -> new Accumulator(request, range.user(request.getUser()), Projection.IPS, false);
+            case IPS_FOR_STATUS -> new Accumulator(request, range.status(request.getStatus()), Projection.IPS, false);
+            case IPS_FOR_EVENT -> new Accumulator(request, range.event(request.getEvent()), Projection.IPS, false);
+            case NUMBER_OF_USERS -> new Accumulator(request, range, Projection.USERS, true);
+            case NUMBER_OF_USER_EVENTS -> new Accumulator(request, forUser, Projection.EVENTS, true);
+            case USERS_FOR_IP -> new Accumulator(request, forIP, Projection.USERS, false);
+            case LOGGED_USERS -> new Accumulator(request, range.event(Event.LOGIN), Projection.USERS, false);
+            case DOWNLOADED_PLUGIN_USERS -> new Accumulator(request, range.event(Event.DOWNLOAD_PLUGIN), Projection.USERS, false);
+            case WROTE_MESSAGE_USERS -> new Accumulator(request, range.event(Event.WRITE_MESSAGE), Projection.USERS, false);
+            case SOLVED_TASK_USERS -> new Accumulator(request, task(range.event(Event.SOLVE_TASK), request), Projection.USERS, false);
+            case DONE_TASK_USERS -> new Accumulator(request, task(range.event(Event.DONE_TASK), request), Projection.USERS, false);
+            case DATES_FOR_USER_AND_EVENT -> new Accumulator(request, forUser.event(request.getEvent()), Projection.DATES, false);
+            case DATES_WHEN_SOMETHING_FAILED -> new Accumulator(request, range.status(Status.FAILED), Projection.DATES, false);
+            case DATES_WHEN_ERROR_HAPPENED -> new Accumulator(request, range.status(Status.ERROR), Projection.DATES, false);
+            case DATE_WHEN_USER_LOGGED_FIRST_TIME -> new Accumulator(request, forUser.event(Event.LOGIN), Projection.FIRST_DATE, false);
+            case DATE_WHEN_USER_SOLVED_TASK -> new Accumulator(request, task(forUser.event(Event.SOLVE_TASK), request), Projection.FIRST_DATE, false);
+            case DATE_WHEN_USER_DONE_TASK -> new Accumulator(request, task(forUser.event(Event.DONE_TASK), request), Projection.FIRST_DATE, false);
+            case DATES_WHEN_USER_WROTE_MESSAGE -> new Accumulator(request, forUser.event(Event.WRITE_MESSAGE), Projection.DATES, false);
+            case DATES_WHEN_USER_DOWNLOADED_PLUGIN -> new Accumulator(request, forUser.event(Event.DOWNLOAD_PLUGIN), Projection.DATES, false);
+            case NUMBER_OF_ALL_EVENTS -> new Accumulator(request, range, Projection.EVENTS, true);
+            case ALL_EVENTS -> new Accumulator(request, range, Projection.EVENTS, false);
+            case EVENTS_FOR_IP -> new Accumulator(request, forIP, Projection.EVENTS, false);
+            case EVENTS_FOR_USER -> new Accumulator(request, forUser, Projection.EVENTS, false);
+            case FAILED_EVENTS -> new Accumulator(request, range.status(Status.FAILED), Projection.EVENTS, false);
+            case ERROR_EVENTS -> new Accumulator(request, range.status(Status.ERROR), Projection.EVENTS, false);
+            case NUMBER_OF_ATTEMPT_TO_SOLVE_TASK -> new Accumulator(request, task(range.event(Event.SOLVE_TASK), request), Projection.COUNT, false);
+            case NUMBER_OF_SUCCESSFUL_ATTEMPT_TO_SOLVE_TASK -> new Accumulator(request, task(range.event(Event.DONE_TASK), request), Projection.COUNT, false);
+            case ALL_SOLVED_TASKS_AND_THEIR_NUMBER -> new Accumulator(request, range.event(Event.SOLVE_TASK), Projection.TASKS, false);
+            case ALL_DONE_TASKS_AND_THEIR_NUMBER -> new Accumulator(request, range.event(Event.DONE_TASK), Projection.TASKS, false);
+        };
+    }
+
+    private static RowFilter task(RowFilter filter, BatchRequest request) {
+        return request.getTask() == null ? filter : filter.task(request.getTask());
+    }
+
+    private static final class Accumulator {
+        private final BatchRequest request;
+        private final RowFilter filter;
+        private final Projection projection;
+        private final boolean sizeOnly;
+        private LogStore.Match match;
+        private final BitSet ids = new BitSet();
+        private final Set<Date> dates = new HashSet<>();
+        private final Set<Event> events = EnumSet.noneOf(Event.class);
+        private final Map<Integer, Integer> tasks = new HashMap<>();
+        private long firstDate = Long.MAX_VALUE;
+        private boolean found;
+        private int count;
+
+        Accumulator(BatchRequest request, RowFilter filter, Projection projection, boolean sizeOnly) {
+            this.request = request;
+            this.filter = filter;
+            this.projection = projection;
+            this.sizeOnly = sizeOnly;
+        }
+
+        /**
+         * Prepares for the rows of {@code store}; returns false if none of them can match.
+         */
+        boolean bind(LogStore store) {
+            match = store.match(filter);
+            return match != null;
+        }
+
+        /**
+         * Takes the matching rows among {@code [from, to)}.
+         */
+        void offer(LogStore store, int from, int to) {
+            long word = match.word(from, to);
+            if (word == 0) {
+                return;
+            }
+            if (projection == Projection.COUNT) {
+                count += Long.bitCount(word);
+                return;
+            }
+            for (; word != 0; word &= word - 1) {
+                int row = from + Long.numberOfTrailingZeros(word);
+                switch (projection) {
+                    case IPS -> ids.set(store.globalIp(row));
+                    case USERS -> ids.set(store.globalUser(row));
+                    case DATES -> dates.add(new Date(store.date(row)));
+                    case FIRST_DATE -> {
+                        firstDate = Math.min(firstDate, store.date(row));
+                        found = true;
+                    }
+                    case EVENTS -> events.add(store.event(row));
+                    case TASKS -> tasks.merge(store.task(row), 1, Integer::sum);
+                }
+            }
+        }
+
+        Object result(GlobalDictionary ipDictionary, GlobalDictionary userDictionary) {
+            return switch (projection) {
+                case IPS, USERS -> sizeOnly ? (Object) ids.cardinality()
+                        : decode(projection == Projection.IPS ? ipDictionary : userDictionary);
+                case DATES -> dates;
+                case FIRST_DATE -> found ? new Date(firstDate) : null;
+                case EVENTS -> sizeOnly ? (Object) events.size() : events;
+                case COUNT -> count;
+                case TASKS -> tasks;
+            };
+        }
+
+        private Set<String> decode(GlobalDictionary dictionary) {
+            Set<String> values = new HashSet<>();
+            for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+                values.add(dictionary.valueOf(id));
+            }
+            return values;
+        }
+    }
+}
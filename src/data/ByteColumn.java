@@ -0,0 +1,50 @@
+package data;
+
+import java.io.IOException;
+
+/**
+ * Read-only byte values of a {@link LogStore} column: a heap array, or native memory of an off-heap
+ * store (see {@link NativeMemory}).
+ */
+abstract class ByteColumn {
+    static ByteColumn of(byte[] values) {
+        return new Heap(values);
+    }
+
+    abstract byte get(int index);
+
+    /**
+     * The backing array, or null if the values are off the heap.
+     */
+    byte[] array() {
+        return null;
+    }
+
+    /**
+     * Writes the first {@code length} values like {@link SnapshotFile.Output#writeBytes}.
+     */
+    abstract void writeTo(SnapshotFile.Output out, int length) throws IOException;
+
+    private static final class Heap extends ByteColumn {
+        private final byte[] values;
+
+        Heap(byte[] values) {
+            this.values = values;
+        }
+
+        @Override
+        byte get(int index) {
+            return values[index];
+        }
+
+        @Override
+        byte[] array() {
+            return values;
+        }
+
+        @Override
+        void writeTo(SnapshotFile.Output out, int length) throws IOException {
+            out.writeBytes(values, length);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Decompresses a rotated {@code .log.gz} or {@code .log.zst} file on a thread of its own and hands
+ * out its content as line-aligned chunks, so the caller tokenizes one chunk while the next is
+ * being inflated. At most {@link #QUEUE_CAPACITY} chunks wait to be taken.
+ * <p>
+ * Gzip uses the JDK. Zstandard needs {@code com.github.luben:zstd-jni} on the class path; it is
+ * loaded by reflection so the parser does not depend on it otherwise.
+ */
+final class DecompressedChunks implements Closeable {
+    private static final int CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final int QUEUE_CAPACITY = 4;
+    private static final String ZSTD_STREAM = "com.github.luben.zstd.ZstdInputStream";
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private final BlockingQueue<Object> chunks = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final InputStream in;
+    private final Thread decompressor;
+    private boolean ended;
+
+    private final long skip;
+
+    /**
+     * @param skip decompressed bytes at the start of the file to leave out, a line end
+     */
+    DecompressedChunks(Path file, long skip) throws IOException {
+        in = open(file);
+        this.skip = skip;
+        decompressor = new Thread(this::decompress, "log-decompressor-" + file.getFileName());
+        decompressor.setDaemon(true);
+        decompressor.start();
+    }
+
+    static boolean isCompressed(Path file) {
+        String name = file.toString().toLowerCase();
+        return name.endsWith(".gz") || name.endsWith(".zst");
+    }
+
+    static InputStream open(Path file) throws IOException {
+        InputStream raw = Files.newInputStream(file);
+        try {
+            if (file.toString().toLowerCase().endsWith(".gz")) {
+                return new GZIPInputStream(raw, 64 * 1024);
+            }
+            return zstd(raw);
+        } catch (IOException | RuntimeException e) {
+            raw.close();
+            throw e;
+        }
+    }
+
+    private static InputStream zstd(InputStream raw) throws IOException {
+        try {
+            return (InputStream) Class.forName(ZSTD_STREAM).getConstructor(InputStream.class).newInstance(raw);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Reading .zst logs requires com.github.luben:zstd-jni on the class path", e);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException("Failed to open zstd stream", e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to open zstd stream", e);
+        }
+    }
+
+    /**
+     * Returns the next chunk, holding only complete lines except possibly for the last one of the
+     * file, or null once the file has been read.
+     *
+     * @throws IOException if the file cannot be decompressed, for example because it is truncated
+     */
+    ByteBuffer next() throws IOException {
+        if (ended) {
+            return null;
+        }
+        Object chunk;
+        try {
+            chunk = chunks.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while decompressing", e);
+        }
+        if (chunk instanceof IOException) {
+            ended = true;
+            throw (IOException) chunk;
+        }
+        if (chunk == END) {
+            ended = true;
+            return null;
+        }
+        return (ByteBuffer) chunk;
+    }
+
+    private void decompress() {
+        byte[] buffer = new byte[CHUNK_SIZE];
+        int length = 0;
+        try (InputStream input = in) {
+            input.skipNBytes(skip);
+            while (true) {
+                if (length == buffer.length) {
+                    // A single line longer than the buffer.
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                int read = input.read(buffer, length, buffer.length - length);
+                if (read < 0) {
+                    break;
+                }
+                length += read;
+                if (length < buffer.length) {
+                    continue;
+                }
+                int lineEnd = lastLineEnd(buffer, length);
+                if (lineEnd > 0) {
+                    chunks.put(ByteBuffer.wrap(Arrays.copyOf(buffer, lineEnd)));
+                    System.arraycopy(buffer, lineEnd, buffer, 0, length - lineEnd);
+                    length -= lineEnd;
+                }
+            }
+            if (length > 0) {
+                chunks.put(ByteBuffer.wrap(Arrays.copyOf(buffer, length)));
+            }
+            chunks.put(END);
+        } catch (IOException e) {
+            try {
+                chunks.put(e);
+            } catch (InterruptedException interrupted) {
+                // close() was called.
+            }
+        } catch (InterruptedException e) {
+            // close() was called.
+        }
+    }
+
+    private static int lastLineEnd(byte[] buffer, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (buffer[i] == '\n' || buffer[i] == '\r') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Stops decompressing if the file has not been read to the end.
+     */
+    @Override
+    public void close() {
+        decompressor.interrupt();
+    }
+}
@@ -0,0 +1,97 @@
+package data;
+
+import java.util.Arrays;
+
+/**
+ * Per-day {@link HyperLogLog} sketches of one dictionary column (IPs or users) of a sealed
+ * {@link LogStore}. As in {@link Rollup}, every day is a contiguous slice of the date-ordered rows:
+ * whole days inside a row range are merged from their sketches and the rows of partial days are
+ * hashed one by one. Days with fewer rows than a sketch has registers get no sketch and are always
+ * hashed row by row.
+ */
+final class DistinctSketch {
+    private static final long DAY_MILLIS = 86_400_000L;
+    private static final int MIN_ROWS = 16_384;
+
+    private final IntColumn ids;
+    private final long[] hashes;
+    private final int[] rowStarts;
+    private final HyperLogLog[] sketches;
+
+    /**
+     * @param ids    the dictionary id column, ordered by {@code dates}
+     * @param values the dictionary the ids refer to
+     */
+    DistinctSketch(LongColumn dates, IntColumn ids, StringDictionary values, int size) {
+        this.ids = ids;
+        hashes = new long[values.size()];
+        for (int id = 0; id < hashes.length; id++) {
+            hashes[id] = HyperLogLog.hash(values.valueOf(id));
+        }
+        int buckets = 0;
+        int[] starts = new int[size + 1];
+        for (int row = 0; row < size; row++) {
+            if (row == 0 || Math.floorDiv(dates.get(row), DAY_MILLIS) != Math.floorDiv(dates.get(row - 1), DAY_MILLIS)) {
+                starts[buckets++] = row;
+            }
+        }
+        starts[buckets] = size;
+        rowStarts = Arrays.copyOf(starts, buckets + 1);
+        sketches = new HyperLogLog[buckets];
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            if (rowStarts[bucket + 1] - rowStarts[bucket] >= MIN_ROWS) {
+                sketches[bucket] = new HyperLogLog();
+                addRows(rowStarts[bucket], rowStarts[bucket + 1], sketches[bucket]);
+            }
+        }
+    }
+
+    /**
+     * Adds the values of rows {@code [from, to)} to {@code target}.
+     */
+    void addTo(int from, int to, HyperLogLog target) {
+        if (from >= to) {
+            return;
+        }
+        int bucket = bucketOf(from);
+        if (rowStarts[bucket] != from) {
+            // Partial first day.
+            int end = Math.min(to, rowStarts[bucket + 1]);
+            addRows(from, end, target);
+            from = end;
+            bucket++;
+        }
+        for (; from < to; bucket++) {
+            int end = rowStarts[bucket + 1];
+            if (end <= to && sketches[bucket] != null) {
+                target.addAll(sketches[bucket]);
+            } else {
+                addRows(from, Math.min(end, to), target);
+            }
+            from = end;
+        }
+    }
+
+    private void addRows(int from, int to, HyperLogLog target) {
+        for (int row = from; row < to; row++) {
+            target.add(hashes[ids.get(row)]);
+        }
+    }
+
+    /**
+     * Largest {@code b} with {@code rowStarts[b] <= row}.
+     */
+    private int bucketOf(int row) {
+        int low = 0;
+        int high = rowStarts.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (rowStarts[middle] > row) {
+                high = middle - 1;
+            } else {
+                low = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,81 @@
+package data;
+
+import java.util.*;
+
+/**
+ * Mergeable frequent-items summary (Misra-Gries, the counter-based twin of Space-Saving) over int
+ * ids. It holds at most about {@code 2 * capacity} counters: whenever it grows past that, the
+ * {@code (capacity + 1)}-th largest count is subtracted from every counter and the ones that drop
+ * to zero go. Each kept count is then a lower bound of the true count, short by at most
+ * {@link #error()}, which stays below {@code total / (capacity + 1)}; every id whose true count
+ * exceeds that bound is kept. Summaries of disjoint rows merge by adding counters and reducing again.
+ */
+final class FrequentItems {
+    private final int capacity;
+    private final Map<Integer, Long> counts = new HashMap<>();
+    private long error;
+
+    FrequentItems(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * A summary that is never reduced and counts exactly, for rows few enough to keep every id.
+     */
+    static FrequentItems exact() {
+        return new FrequentItems(Integer.MAX_VALUE);
+    }
+
+    void add(int id, long count) {
+        counts.merge(id, count, Long::sum);
+        if (counts.size() > 2L * capacity) {
+            reduce();
+        }
+    }
+
+    /**
+     * Accounts for counters added from another summary, which may be short by {@code otherError}.
+     */
+    void addError(long otherError) {
+        error += otherError;
+    }
+
+    /**
+     * Keeps the {@code capacity} largest counters, lowering them by the next largest one.
+     */
+    void reduce() {
+        if (counts.size() <= capacity) {
+            return;
+        }
+        long[] sorted = new long[counts.size()];
+        int i = 0;
+        for (long count : counts.values()) {
+            sorted[i++] = count;
+        }
+        Arrays.sort(sorted);
+        long cut = sorted[sorted.length - capacity - 1];
+        counts.replaceAll((id, count) -> count - cut);
+        counts.values().removeIf(count -> count <= 0);
+        error += cut;
+    }
+
+    /**
+     * Largest amount by which any count, kept or dropped, may fall short of the true count.
+     */
+    long error() {
+        return error;
+    }
+
+    Map<Integer, Long> counts() {
+        return counts;
+    }
+
+    /**
+     * Returns the ids of the {@code k} largest counters, largest first; ties in id order.
+     */
+    List<Integer> top(int k) {
+        List<Integer> ids = new ArrayList<>(counts.keySet());
+        ids.sort(Comparator.<Integer>comparingLong(counts::get).reversed().thenComparing(Comparator.naturalOrder()));
+        return ids.subList(0, Math.min(k, ids.size()));
+    }
+}
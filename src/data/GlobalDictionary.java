@@ -0,0 +1,122 @@
+package data;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Dictionary shared by all stores of a {@link LogParser}. Every distinct IP or user gets one dense
+ * id across stores, so results of several stores are collected in a single {@link BitSet} and
+ * decoded once at the end. An IP dictionary keeps canonical IPv4 addresses as packed ints instead of
+ * Strings, which also makes subnet tests int compares.
+ * <p>
+ * Values are only added under the dictionary lock of the parser, before the stores using them are
+ * published; readers only look up ids they got from published stores.
+ */
+final class GlobalDictionary {
+    private static final int NOT_PACKED = 0;
+
+    private final boolean packIPv4;
+    private final Map<String, Integer> ids = new HashMap<>();
+    // Open addressing table from packed address to id + 1; 0 marks a free slot.
+    private int[] addressKeys = new int[64];
+    private int[] addressIds = new int[64];
+    private int addressCount;
+    private volatile String[] values = new String[64];
+    private volatile int[] addresses = new int[64];
+    private volatile int size;
+
+    /**
+     * @param packIPv4 keep canonical IPv4 addresses as ints, for an IP dictionary
+     */
+    GlobalDictionary(boolean packIPv4) {
+        this.packIPv4 = packIPv4;
+    }
+
+    /**
+     * Returns the ids of all values of {@code local}, indexed by their local id.
+     */
+    int[] map(StringDictionary local) {
+        int[] mapping = new int[local.size()];
+        for (int id = 0; id < mapping.length; id++) {
+            mapping[id] = add(local.valueOf(id));
+        }
+        return mapping;
+    }
+
+    int add(String value) {
+        long address = packIPv4 ? IPv4.parse(value) : IPv4.NOT_IPV4;
+        if (address == IPv4.NOT_IPV4) {
+            Integer id = ids.get(value);
+            if (id != null) {
+                return id;
+            }
+            int newId = append(value, 0);
+            ids.put(value, newId);
+            return newId;
+        }
+        int slot = slot((int) address);
+        if (addressIds[slot] != NOT_PACKED) {
+            return addressIds[slot] - 1;
+        }
+        int newId = append(null, (int) address);
+        addressKeys[slot] = (int) address;
+        addressIds[slot] = newId + 1;
+        if (++addressCount * 2 > addressKeys.length) {
+            rehash();
+        }
+        return newId;
+    }
+
+    private int append(String value, int address) {
+        int id = size;
+        if (id == values.length) {
+            values = Arrays.copyOf(values, id * 2);
+            addresses = Arrays.copyOf(addresses, id * 2);
+        }
+        values[id] = value;
+        addresses[id] = address;
+        size = id + 1;
+        return id;
+    }
+
+    private int slot(int address) {
+        int mask = addressKeys.length - 1;
+        int hash = address * 0x9E3779B9;
+        int slot = (hash ^ hash >>> 16) & mask;
+        while (addressIds[slot] != NOT_PACKED && addressKeys[slot] != address) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash() {
+        int[] oldKeys = addressKeys;
+        int[] oldIds = addressIds;
+        addressKeys = new int[oldKeys.length * 2];
+        addressIds = new int[oldIds.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldIds[i] != NOT_PACKED) {
+                int slot = slot(oldKeys[i]);
+                addressKeys[slot] = oldKeys[i];
+                addressIds[slot] = oldIds[i];
+            }
+        }
+    }
+
+    String valueOf(int id) {
+        String value = values[id];
+        return value != null ? value : IPv4.format(addresses[id]);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * True if {@code id} is a canonical IPv4 address in {@code subnet}.
+     */
+    boolean isInSubnet(int id, IPv4.Subnet subnet) {
+        return values[id] == null && subnet.contains(addresses[id]);
+    }
+}
@@ -0,0 +1,163 @@
+package data;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Per-day {@link FrequentItems} summaries of one dictionary column (IPs or users) of a sealed
+ * {@link LogStore}, one per event and status combination, so the heaviest values of any event and
+ * status filter merge from a bounded number of counters per day. As in {@link DistinctSketch},
+ * partial days at the ends of a range and days with too few rows to be worth a summary are counted
+ * row by row.
+ */
+final class HeavyHitterSketch {
+    private static final long DAY_MILLIS = 86_400_000L;
+    private static final int MIN_ROWS = 16_384;
+    private static final int STATUS_COUNT = Status.values().length;
+    private static final int CELLS = Event.values().length * STATUS_COUNT;
+
+    private final IntColumn ids;
+    private final ByteColumn events;
+    private final ByteColumn statuses;
+    private final int[] rowStarts;
+    /**
+     * Per summarized day: the counters of cell {@code c} are {@code [cellOffsets[c], cellOffsets[c + 1])}
+     * of {@code cellIds} and {@code cellCounts}.
+     */
+    private final int[][] cellOffsets;
+    private final int[][] cellIds;
+    private final int[][] cellCounts;
+    private final long[][] cellErrors;
+
+    /**
+     * @param ids the dictionary id column, ordered by {@code dates}
+     */
+    HeavyHitterSketch(LongColumn dates, IntColumn ids, ByteColumn events, ByteColumn statuses, int size, int capacity) {
+        this.ids = ids;
+        this.events = events;
+        this.statuses = statuses;
+        int buckets = 0;
+        int[] starts = new int[size + 1];
+        for (int row = 0; row < size; row++) {
+            if (row == 0 || Math.floorDiv(dates.get(row), DAY_MILLIS) != Math.floorDiv(dates.get(row - 1), DAY_MILLIS)) {
+                starts[buckets++] = row;
+            }
+        }
+        starts[buckets] = size;
+        rowStarts = Arrays.copyOf(starts, buckets + 1);
+        cellOffsets = new int[buckets][];
+        cellIds = new int[buckets][];
+        cellCounts = new int[buckets][];
+        cellErrors = new long[buckets][];
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            if (rowStarts[bucket + 1] - rowStarts[bucket] >= MIN_ROWS) {
+                summarize(bucket, capacity);
+            }
+        }
+    }
+
+    private void summarize(int bucket, int capacity) {
+        FrequentItems[] cells = new FrequentItems[CELLS];
+        for (int cell = 0; cell < CELLS; cell++) {
+            cells[cell] = new FrequentItems(capacity);
+        }
+        for (int row = rowStarts[bucket]; row < rowStarts[bucket + 1]; row++) {
+            cells[cellOf(row)].add(ids.get(row), 1);
+        }
+        int[] offsets = new int[CELLS + 1];
+        long[] errors = new long[CELLS];
+        for (int cell = 0; cell < CELLS; cell++) {
+            cells[cell].reduce();
+            offsets[cell + 1] = offsets[cell] + cells[cell].counts().size();
+            errors[cell] = cells[cell].error();
+        }
+        int[] cellIdsOfBucket = new int[offsets[CELLS]];
+        int[] cellCountsOfBucket = new int[offsets[CELLS]];
+        for (int cell = 0; cell < CELLS; cell++) {
+            int position = offsets[cell];
+            for (Map.Entry<Integer, Long> entry : cells[cell].counts().entrySet()) {
+                cellIdsOfBucket[position] = entry.getKey();
+                cellCountsOfBucket[position++] = (int) (long) entry.getValue();
+            }
+        }
+        cellOffsets[bucket] = offsets;
+        cellIds[bucket] = cellIdsOfBucket;
+        cellCounts[bucket] = cellCountsOfBucket;
+        cellErrors[bucket] = errors;
+    }
+
+    private int cellOf(int row) {
+        return events.get(row) * STATUS_COUNT + statuses.get(row);
+    }
+
+    /**
+     * Adds the values of rows {@code [from, to)} that match the event and status of {@code filter}
+     * to {@code target}, translated by {@code globalIds}.
+     */
+    void addTo(int from, int to, RowFilter filter, int[] globalIds, FrequentItems target) {
+        if (from >= to) {
+            return;
+        }
+        int bucket = bucketOf(from);
+        if (rowStarts[bucket] != from) {
+            // Partial first day.
+            int end = Math.min(to, rowStarts[bucket + 1]);
+            addRows(from, end, filter, globalIds, target);
+            from = end;
+            bucket++;
+        }
+        for (; from < to; bucket++) {
+            int end = rowStarts[bucket + 1];
+            if (end <= to && cellOffsets[bucket] != null) {
+                addSummary(bucket, filter, globalIds, target);
+            } else {
+                addRows(from, Math.min(end, to), filter, globalIds, target);
+            }
+            from = end;
+        }
+    }
+
+    private void addSummary(int bucket, RowFilter filter, int[] globalIds, FrequentItems target) {
+        int[] offsets = cellOffsets[bucket];
+        long error = 0;
+        for (int cell = 0; cell < CELLS; cell++) {
+            if (matches(cell / STATUS_COUNT, cell % STATUS_COUNT, filter)) {
+                for (int i = offsets[cell]; i < offsets[cell + 1]; i++) {
+                    target.add(globalIds[cellIds[bucket][i]], cellCounts[bucket][i]);
+                }
+                error += cellErrors[bucket][cell];
+            }
+        }
+        target.addError(error);
+    }
+
+    private void addRows(int from, int to, RowFilter filter, int[] globalIds, FrequentItems target) {
+        for (int row = from; row < to; row++) {
+            if (matches(events.get(row), statuses.get(row), filter)) {
+                target.add(globalIds[ids.get(row)], 1);
+            }
+        }
+    }
+
+    private static boolean matches(int event, int status, RowFilter filter) {
+        return (filter.event == RowFilter.ANY || filter.event == event)
+                && (filter.status == RowFilter.ANY || filter.status == status);
+    }
+
+    /**
+     * Largest {@code b} with {@code rowStarts[b] <= row}.
+     */
+    private int bucketOf(int row) {
+        int low = 0;
+        int high = rowStarts.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (rowStarts[middle] > row) {
+                high = middle - 1;
+            } else {
+                low = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,95 @@
+package data;
+
+/**
+ * HyperLogLog distinct-value sketch with 2^14 one-byte registers, for a standard error of about
+ * 0.8%. Values are added as 64-bit hashes; sketches built with the same hash function can be merged.
+ */
+final class HyperLogLog {
+    private static final int PRECISION = 14;
+    private static final int REGISTERS = 1 << PRECISION;
+
+    private final byte[] registers = new byte[REGISTERS];
+
+    void add(long hash) {
+        int index = (int) (hash >>> (Long.SIZE - PRECISION));
+        // The guard bit caps the rank at 64 - PRECISION + 1.
+        byte rank = (byte) (Long.numberOfLeadingZeros(hash << PRECISION | 1L << (PRECISION - 1)) + 1);
+        if (registers[index] < rank) {
+            registers[index] = rank;
+        }
+    }
+
+    void addAll(HyperLogLog other) {
+        for (int i = 0; i < REGISTERS; i++) {
+            if (registers[i] < other.registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * Ertl's improved raw estimator ("New cardinality estimation algorithms for HyperLogLog
+     * sketches", 2017), which stays unbiased across the range where the classic estimator has to
+     * switch to linear counting.
+     */
+    long estimate() {
+        int maxRank = Long.SIZE - PRECISION + 1;
+        int[] histogram = new int[maxRank + 1];
+        for (byte register : registers) {
+            histogram[register]++;
+        }
+        double z = REGISTERS * tau(1 - (double) histogram[maxRank] / REGISTERS);
+        for (int rank = maxRank - 1; rank >= 1; rank--) {
+            z = 0.5 * (z + histogram[rank]);
+        }
+        z += REGISTERS * sigma((double) histogram[0] / REGISTERS);
+        return Math.round(REGISTERS / (2 * Math.log(2)) * REGISTERS / z);
+    }
+
+    private static double sigma(double x) {
+        if (x == 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double y = 1;
+        double z = x;
+        double previous;
+        do {
+            x *= x;
+            previous = z;
+            z += x * y;
+            y += y;
+        } while (z != previous);
+        return z;
+    }
+
+    private static double tau(double x) {
+        if (x == 0 || x == 1) {
+            return 0;
+        }
+        double y = 1;
+        double z = 1 - x;
+        double previous;
+        do {
+            x = Math.sqrt(x);
+            previous = z;
+            y *= 0.5;
+            z -= (1 - x) * (1 - x) * y;
+        } while (z != previous);
+        return z / 3;
+    }
+
+    /**
+     * 64-bit hash of a string that does not depend on the store it came from, so sketches of
+     * different stores can be merged.
+     */
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        // FNV alone leaves the high bits, which pick the register, poorly mixed.
+        hash = (hash ^ hash >>> 33) * 0xff51afd7ed558ccdL;
+        hash = (hash ^ hash >>> 33) * 0xc4ceb9fe1a85ec53L;
+        return hash ^ hash >>> 33;
+    }
+}
@@ -0,0 +1,104 @@
+package data;
+
+/**
+ * IPv4 addresses packed into ints, and CIDR subnets over them.
+ */
+final class IPv4 {
+    /**
+     * Returned by {@link #parse} for anything that is not a canonical dotted-quad address.
+     */
+    static final long NOT_IPV4 = -1;
+
+    private IPv4() {
+    }
+
+    /**
+     * Returns the address as an unsigned value, or {@link #NOT_IPV4}. Only the canonical form (four
+     * parts of 0 to 255 without leading zeros) is accepted, because only that formats back to the
+     * same string.
+     */
+    static long parse(String value) {
+        int length = value.length();
+        if (length < 7 || length > 15) {
+            return NOT_IPV4;
+        }
+        long address = 0;
+        int parts = 0;
+        int part = 0;
+        int digits = 0;
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? value.charAt(i) : '.';
+            if (c >= '0' && c <= '9') {
+                if (digits == 1 && part == 0) {
+                    return NOT_IPV4;
+                }
+                part = part * 10 + (c - '0');
+                if (++digits > 3 || part > 255) {
+                    return NOT_IPV4;
+                }
+            } else if (c == '.' && digits > 0 && parts < 4) {
+                address = address << 8 | part;
+                parts++;
+                part = 0;
+                digits = 0;
+            } else {
+                return NOT_IPV4;
+            }
+        }
+        return parts == 4 ? address : NOT_IPV4;
+    }
+
+    static String format(int address) {
+        return (address >>> 24) + "." + (address >>> 16 & 0xff) + "." + (address >>> 8 & 0xff) + "." + (address & 0xff);
+    }
+
+    /**
+     * A CIDR block such as {@code 192.168.0.0/16}; a plain address is a {@code /32}.
+     */
+    static final class Subnet {
+        private final int network;
+        private final int mask;
+
+        private Subnet(int network, int mask) {
+            this.network = network;
+            this.mask = mask;
+        }
+
+        /**
+         * @throws IllegalArgumentException if {@code cidr} is not an IPv4 address with an optional
+         *                                  prefix length of 0 to 32
+         */
+        static Subnet parse(String cidr) {
+            int slash = cidr.indexOf('/');
+            long address = IPv4.parse(slash < 0 ? cidr : cidr.substring(0, slash));
+            int bits;
+            try {
+                bits = slash < 0 ? 32 : Integer.parseInt(cidr.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                bits = -1;
+            }
+            if (address == NOT_IPV4 || bits < 0 || bits > 32) {
+                throw new IllegalArgumentException("Invalid subnet: " + cidr);
+            }
+            int mask = bits == 0 ? 0 : -1 << (32 - bits);
+            return new Subnet((int) address & mask, mask);
+        }
+
+        boolean contains(int address) {
+            return (address & mask) == network;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Subnet)) return false;
+            Subnet that = (Subnet) o;
+            return network == that.network && mask == that.mask;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * network + mask;
+        }
+    }
+}
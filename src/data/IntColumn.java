@@ -0,0 +1,50 @@
+package data;
+
+import java.io.IOException;
+
+/**
+ * Read-only int values of a {@link LogStore} column or of the rows of a {@link PostingIndex}: a
+ * heap array, or native memory of an off-heap store (see {@link NativeMemory}).
+ */
+abstract class IntColumn {
+    static IntColumn of(int[] values) {
+        return new Heap(values);
+    }
+
+    abstract int get(int index);
+
+    /**
+     * The backing array, or null if the values are off the heap.
+     */
+    int[] array() {
+        return null;
+    }
+
+    /**
+     * Writes the first {@code length} values like {@link SnapshotFile.Output#writeInts}.
+     */
+    abstract void writeTo(SnapshotFile.Output out, int length) throws IOException;
+
+    private static final class Heap extends IntColumn {
+        private final int[] values;
+
+        Heap(int[] values) {
+            this.values = values;
+        }
+
+        @Override
+        int get(int index) {
+            return values[index];
+        }
+
+        @Override
+        int[] array() {
+            return values;
+        }
+
+        @Override
+        void writeTo(SnapshotFile.Output out, int length) throws IOException {
+            out.writeInts(values, length);
+        }
+    }
+}
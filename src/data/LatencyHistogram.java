@@ -0,0 +1,48 @@
+package data;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies of one query method in power-of-two nanosecond buckets: bucket {@code i} counts the
+ * latencies below {@code 2^i} ns and at least {@code 2^(i-1)} ns. Percentiles are read as the upper
+ * bound of their bucket, so they overstate by less than a factor of two. Recording never locks.
+ */
+final class LatencyHistogram {
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(value));
+        totalNanos.add(value);
+        maxNanos.accumulate(value);
+    }
+
+    LogParserMetrics.QueryLatency snapshot() {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        return new LogParserMetrics.QueryLatency(total, totalNanos.sum(), maxNanos.get(),
+                percentile(counts, total, 0.5), percentile(counts, total, 0.99));
+    }
+
+    private static long percentile(long[] counts, long total, double fraction) {
+        long rank = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0) {
+                return i == 0 ? 0 : i == BUCKETS - 1 ? Long.MAX_VALUE : 1L << i;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,359 @@
+package data;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Map;
+
+/**
+ * Splits log lines straight out of a (memory-mapped) byte buffer. Tab boundaries, the
+ * {@code d.M.yyyy H:m:s} timestamp, the event keyword with its task number and the status are
+ * all read from the bytes; only IP and user names become Strings, and repeated values are served
+ * from a small cache instead of being decoded again.
+ * <p>
+ * Lines that do not have exactly five fields, or whose date, event or status cannot be read,
+ * are skipped and counted by {@link RejectReason}. A tokenizer is not thread-safe; use one per
+ * worker.
+ */
+final class LogLineTokenizer {
+    interface Sink {
+        void accept(String ip, String user, long date, Event event, int task, Status status);
+    }
+
+    private static final int FIELDS = 5;
+    private static final int STRING_CACHE_SIZE = 4096;
+    private static final int HOUR_CACHE_SIZE = 256;
+    private static final byte[] DATE_SEPARATORS = {'.', '.', ' ', ':', ':'};
+    private static final byte[][] EVENT_NAMES = new byte[Event.values().length][];
+    private static final byte[][] STATUS_NAMES = new byte[Status.values().length][];
+
+    static {
+        for (Event event : Event.values()) {
+            EVENT_NAMES[event.ordinal()] = ascii(event.name());
+        }
+        for (Status status : Status.values()) {
+            STATUS_NAMES[status.ordinal()] = ascii(status.name());
+        }
+    }
+
+    private final Charset charset = Charset.defaultCharset();
+    private final byte[][] cachedBytes = new byte[STRING_CACHE_SIZE][];
+    private final String[] cachedStrings = new String[STRING_CACHE_SIZE];
+    private final long[] cachedHourKeys = new long[HOUR_CACHE_SIZE];
+    private final long[] cachedHourMillis = new long[HOUR_CACHE_SIZE];
+    private final Calendar calendar = new GregorianCalendar();
+    private final DateFormat dateFormat = new SimpleDateFormat(LogParser.DATE_PATTERN);
+    private final int[] tabs = new int[FIELDS];
+    private final int[] dateFields = new int[6];
+    private final long[] rejected = new long[RejectReason.values().length];
+    private long accepted;
+    private Event event;
+    private int task;
+
+    LogLineTokenizer() {
+        Arrays.fill(cachedHourKeys, -1);
+    }
+
+    /**
+     * Tokenizes every line in {@code [from, to)} of the buffer. Line terminators are the same as
+     * for {@code BufferedReader.readLine}: {@code \n}, {@code \r} or {@code \r\n}.
+     */
+    void tokenize(ByteBuffer buffer, int from, int to, Sink sink) {
+        int lineStart = from;
+        for (int i = from; i < to; i++) {
+            byte b = buffer.get(i);
+            if (b == '\n' || b == '\r') {
+                tokenizeLine(buffer, lineStart, i, sink);
+                if (b == '\r' && i + 1 < to && buffer.get(i + 1) == '\n') {
+                    i++;
+                }
+                lineStart = i + 1;
+            }
+        }
+        if (lineStart < to) {
+            tokenizeLine(buffer, lineStart, to, sink);
+        }
+    }
+
+    private void tokenizeLine(ByteBuffer buffer, int from, int to, Sink sink) {
+        // Same field count rule as line.split("\t").length == 5: trailing empty fields do not count.
+        int end = to;
+        while (end > from && buffer.get(end - 1) == '\t') {
+            end--;
+        }
+        int fieldCount = 0;
+        for (int i = from; i < end; i++) {
+            if (buffer.get(i) == '\t') {
+                if (fieldCount == FIELDS - 1) {
+                    reject(RejectReason.WRONG_FIELD_COUNT);
+                    return;
+                }
+                tabs[fieldCount++] = i;
+            }
+        }
+        if (fieldCount != FIELDS - 1) {
+            reject(RejectReason.WRONG_FIELD_COUNT);
+            return;
+        }
+
+        int dateStart = tabs[1] + 1;
+        int eventStart = tabs[2] + 1;
+        int statusStart = tabs[3] + 1;
+
+        long date = readDate(buffer, dateStart, tabs[2]);
+        if (date == Long.MIN_VALUE) {
+            reject(RejectReason.UNPARSEABLE_DATE);
+            return;
+        }
+        if (!readEvent(buffer, eventStart, tabs[3])) {
+            reject(RejectReason.UNKNOWN_EVENT);
+            return;
+        }
+        Status status = readStatus(buffer, statusStart, end);
+        if (status == null) {
+            reject(RejectReason.UNKNOWN_STATUS);
+            return;
+        }
+
+        String ip = readString(buffer, from, tabs[0]);
+        String user = readString(buffer, tabs[0] + 1, tabs[1]);
+        sink.accept(ip, user, date, event, task, status);
+        accepted++;
+    }
+
+    private void reject(RejectReason reason) {
+        rejected[reason.ordinal()]++;
+    }
+
+    /**
+     * Number of lines handed to a sink so far.
+     */
+    long accepted() {
+        return accepted;
+    }
+
+    /**
+     * Number of lines skipped so far, indexed by {@link RejectReason} ordinal.
+     */
+    long[] rejected() {
+        return rejected;
+    }
+
+    /**
+     * Returns the epoch millis of a {@code d.M.yyyy H:m:s} date, or {@code Long.MIN_VALUE} if the
+     * field cannot be parsed. Plain digit fields are read directly; anything else is handed to
+     * {@code SimpleDateFormat} so lenient inputs resolve exactly as before.
+     */
+    private long readDate(ByteBuffer buffer, int from, int to) {
+        int field = 0;
+        int digits = 0;
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                if (++digits > 9) {
+                    return parseDate(buffer, from, to);
+                }
+                value = value * 10 + (b - '0');
+            } else if (digits > 0 && field < 5 && b == DATE_SEPARATORS[field]) {
+                dateFields[field++] = value;
+                digits = 0;
+                value = 0;
+            } else {
+                return parseDate(buffer, from, to);
+            }
+        }
+        if (field != 5 || digits == 0) {
+            return parseDate(buffer, from, to);
+        }
+        dateFields[5] = value;
+        return toMillis(dateFields[2], dateFields[1], dateFields[0], dateFields[3], dateFields[4], dateFields[5]);
+    }
+
+    private long toMillis(int year, int month, int day, int hour, int minute, int second) {
+        if (year < 1900 || year > 9999 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour > 23 || minute > 59 || second > 59) {
+            return calendarMillis(year, month, day, hour, minute, second);
+        }
+        long hourKey = (((long) year * 16 + month) * 32 + day) * 32 + hour;
+        int slot = (int) (hourKey % HOUR_CACHE_SIZE);
+        if (cachedHourKeys[slot] != hourKey) {
+            long hourStart = calendarMillis(year, month, day, hour, 0, 0);
+            // An hour that contains a zone offset change is never cached.
+            if (calendarMillis(year, month, day, hour, 59, 59) != hourStart + 3_599_000L) {
+                return calendarMillis(year, month, day, hour, minute, second);
+            }
+            cachedHourKeys[slot] = hourKey;
+            cachedHourMillis[slot] = hourStart;
+        }
+        return cachedHourMillis[slot] + minute * 60_000L + second * 1_000L;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) {
+            return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    private long calendarMillis(int year, int month, int day, int hour, int minute, int second) {
+        calendar.clear();
+        calendar.set(year, month - 1, day, hour, minute, second);
+        return calendar.getTimeInMillis();
+    }
+
+    private long parseDate(ByteBuffer buffer, int from, int to) {
+        try {
+            Date date = dateFormat.parse(decode(buffer, from, to));
+            return date.getTime();
+        } catch (ParseException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Reads the event keyword and, for SOLVE_TASK and DONE_TASK, the task number into {@link #event}
+     * and {@link #task}. Returns false if the field is not a known event.
+     */
+    private boolean readEvent(ByteBuffer buffer, int from, int to) {
+        for (Event event : Event.values()) {
+            if (matches(buffer, from, to, EVENT_NAMES[event.ordinal()])) {
+                if (event == Event.SOLVE_TASK || event == Event.DONE_TASK) {
+                    break;
+                }
+                this.event = event;
+                this.task = -1;
+                return true;
+            }
+        }
+        if (readTaskEvent(buffer, from, to, Event.SOLVE_TASK) || readTaskEvent(buffer, from, to, Event.DONE_TASK)) {
+            return true;
+        }
+        // Anything unusual goes through the original String rules.
+        String field = decode(buffer, from, to);
+        try {
+            event = readEvent(field);
+            if (event == null) {
+                return false;
+            }
+            task = event == Event.SOLVE_TASK || event == Event.DONE_TASK ? readAdditionalParameter(field) : -1;
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Fast path for the common {@code "SOLVE_TASK 18"} shape: the keyword, spaces and digits only.
+     */
+    private boolean readTaskEvent(ByteBuffer buffer, int from, int to, Event taskEvent) {
+        byte[] keyword = EVENT_NAMES[taskEvent.ordinal()];
+        if (!startsWith(buffer, from, to, keyword)) {
+            return false;
+        }
+        int i = from + keyword.length;
+        while (i < to && buffer.get(i) == ' ') {
+            i++;
+        }
+        int digits = 0;
+        long value = 0;
+        for (; i < to && digits < 10; i++, digits++) {
+            byte b = buffer.get(i);
+            if (b < '0' || b > '9') {
+                return false;
+            }
+            value = value * 10 + (b - '0');
+        }
+        if (i != to || digits == 0 || value > Integer.MAX_VALUE) {
+            return false;
+        }
+        event = taskEvent;
+        task = (int) value;
+        return true;
+    }
+
+    private static Event readEvent(String lineToParse) {
+        if (lineToParse.contains("SOLVE_TASK")) return Event.SOLVE_TASK;
+        if (lineToParse.contains("DONE_TASK")) return Event.DONE_TASK;
+        return eventMap.get(lineToParse);
+    }
+
+    private static final Map<String, Event> eventMap = Map.of(
+            "LOGIN", Event.LOGIN,
+            "DOWNLOAD_PLUGIN", Event.DOWNLOAD_PLUGIN,
+            "WRITE_MESSAGE", Event.WRITE_MESSAGE
+    );
+
+    private static int readAdditionalParameter(String lineToParse) {
+        return extractTaskParameter(lineToParse, Event.SOLVE_TASK) != -1 ?
+                extractTaskParameter(lineToParse, Event.SOLVE_TASK) :
+                extractTaskParameter(lineToParse, Event.DONE_TASK);
+    }
+
+    private static int extractTaskParameter(String lineToParse, Event event) {
+        if (lineToParse.contains(event.name())) {
+            return Integer.parseInt(lineToParse.replace(event.name(), "").replaceAll(" ", ""));
+        }
+        return -1;
+    }
+
+    private Status readStatus(ByteBuffer buffer, int from, int to) {
+        for (Status status : Status.values()) {
+            if (matches(buffer, from, to, STATUS_NAMES[status.ordinal()])) {
+                return status;
+            }
+        }
+        return null;
+    }
+
+    private String readString(ByteBuffer buffer, int from, int to) {
+        int hash = 1;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + buffer.get(i);
+        }
+        int slot = (hash & 0x7fffffff) % STRING_CACHE_SIZE;
+        byte[] bytes = cachedBytes[slot];
+        if (bytes != null && matches(buffer, from, to, bytes)) {
+            return cachedStrings[slot];
+        }
+        bytes = new byte[to - from];
+        buffer.get(from, bytes);
+        String value = new String(bytes, charset);
+        cachedBytes[slot] = bytes;
+        cachedStrings[slot] = value;
+        return value;
+    }
+
+    private String decode(ByteBuffer buffer, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        buffer.get(from, bytes);
+        return new String(bytes, charset);
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int from, int to, byte[] prefix) {
+        if (to - from < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(from + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(ByteBuffer buffer, int from, int to, byte[] value) {
+        return to - from == value.length && startsWith(buffer, from, to, value);
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
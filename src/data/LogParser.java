@@ -2,513 +2,1381 @@ package data;
 
 import query.*;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 import java.io.IOException;
-import java.nio.file.DirectoryStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.lang.management.ManagementFactory;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Answers queries over the log files of a directory. One instance can be shared by any number of
+ * query threads while {@link #refresh()} or the tailer ingests new lines: queries work on the
+ * immutable segment list published last and never wait for ingestion. Writers are serialized
+ * among themselves; loading an evicted segment only locks that segment.
+ * <p>
+ * {@link #close()} ends the parser's threads and releases its records, which matters most for
+ * {@link LogParserOptions#withOffHeapStore off-heap} records.
+ */
+public class LogParser implements IPQuery, UserQuery, DateQuery, EventQuery, QLQuery, BatchQuery, StreamQuery, SubnetQuery,
+        AnalyticsQuery, TopKQuery, AutoCloseable {
+    static final String DATE_PATTERN = "d.M.yyyy H:m:s";
+    private static final int MAX_APPENDED_STORES = 16;
+    private static final int MAX_CACHED_PLANS = 256;
+    private static final long DAY_MILLIS = 86_400_000L;
+    /**
+     * Top-k queries over at most this many rows in their date range are counted exactly.
+     */
+    private static final int EXACT_TOP_K_ROWS = 1 << 16;
+    /**
+     * Returned by rotatedFrom() for a file that is so far a part of a file read before.
+     */
+    private static final long STILL_COPYING = -1;
 
-public class LogParser implements IPQuery, UserQuery, DateQuery, EventQuery, QLQuery {
     private final Path logDir;
-    private final List<LogEntity> logEntities = new ArrayList<>();
-    private final DateFormat simpleDateFormat = new SimpleDateFormat("d.M.yyyy H:m:s");
+    private final LogParserOptions options;
+    private final LogReader reader;
+    private final ParallelScan scan;
+    private final ResultCache cache;
+    private final MetricsRecorder metrics;
+    private final Object writeLock = new Object();
+    // Guards adding values to the dictionaries, which both writers and segment loads do.
+    private final Object dictionaryLock = new Object();
+    private final Object budgetLock = new Object();
+    private final Map<Path, Long> offsets = new HashMap<>();
+    private final Map<Path, String> firstLines = new HashMap<>();
+    // File system identity of every plain log file read, where the file system has one.
+    private final Map<Path, Object> fileKeys = new HashMap<>();
+    // The plain files read, by their first line, see rotatedFrom().
+    private final Map<String, List<ReadPrefix>> readPrefixes = new HashMap<>();
+    private final GlobalDictionary ipDictionary = new GlobalDictionary(true);
+    private final GlobalDictionary userDictionary = new GlobalDictionary(false);
+    private volatile List<Segment> segments = List.of();
+    private int loadedSegmentCount;
+    private volatile SnapshotFile snapshot;
+    private final Map<String, QLPlan> plans = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, QLPlan> eldest) {
+            return size() > MAX_CACHED_PLANS;
+        }
+    });
+    private Thread tailer;
+    private WatchService watchService;
+    private volatile boolean closed;
 
     public LogParser(Path logDir) {
+        this(logDir, LogParserOptions.defaults());
+    }
+
+    /**
+     * @param parallelism number of threads used to read the log files, see {@link LogParserOptions#withParallelism}
+     */
+    public LogParser(Path logDir, int parallelism) {
+        this(logDir, LogParserOptions.defaults().withParallelism(parallelism));
+    }
+
+    /**
+     * @throws IllegalStateException if {@link LogParserOptions#withOffHeapStore off-heap} records are
+     *                               asked for without the module they need
+     */
+    public LogParser(Path logDir, LogParserOptions options) {
+        if (options.isOffHeapStore() && !NativeMemory.isAvailable()) {
+            throw new IllegalStateException(NativeMemory.unavailableMessage());
+        }
         this.logDir = logDir;
+        this.options = options;
+        this.metrics = new MetricsRecorder(options.getMetricsListener());
+        this.reader = new LogReader(options.getParallelism(), metrics);
+        ForkJoinPool queryPool = options.getQueryParallelism() > 1 ? new ForkJoinPool(options.getQueryParallelism()) : null;
+        this.scan = new ParallelScan(queryPool, options.getParallelQueryThreshold(), metrics);
+        this.cache = new ResultCache(options.getResultCacheSize());
         readLogs();
     }
 
     private void readLogs() {
-        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(logDir)) {
-            for (Path file : directoryStream) {
-                if (file.toString().toLowerCase().endsWith(".log")) {
-                    try (BufferedReader reader = new BufferedReader(new FileReader(file.toFile()))) {
-                        String line;
-                        while ((line = reader.readLine()) != null) {
-                            String[] params = line.split("\t");
-
-                            if (params.length != 5) {
+        synchronized (writeLock) {
+            List<Path> files = new ArrayList<>();
+            List<LogReader.Range> ranges = new ArrayList<>();
+            try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(logDir)) {
+                for (Path file : directoryStream) {
+                    if (isLogFile(file)) {
+                        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                        long size = attributes.size();
+                        files.add(file);
+                        ranges.add(new LogReader.Range(file, 0, size));
+                        if (DecompressedChunks.isCompressed(file)) {
+                            offsets.put(file, size);
+                        } else {
+                            markRead(file, size, attributes.fileKey());
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                metrics.readFailed(logDir, e);
+            }
+            List<Segment> loaded;
+            if (options.isSnapshotEnabled()) {
+                loaded = readWithSnapshot(files, ranges);
+            } else if (isSegmented()) {
+                List<LogStore> parsed = reader.readEach(ranges);
+                loaded = new ArrayList<>();
+                for (int i = 0; i < parsed.size(); i++) {
+                    loaded.add(new Segment(ranges.get(i), 0, attach(parsed.get(i))));
+                }
+            } else {
+                loaded = List.of(new Segment(null, 0, attach(reader.read(ranges))));
+            }
+            List<Segment> retained = new ArrayList<>(loaded);
+            loadedSegmentCount = retained.size();
+            dropExpired(retained);
+            segments = List.copyOf(retained);
+            evictOverBudget();
+        }
+    }
+
+    /**
+     * True if every log file gets a segment of its own, rather than all files sharing one.
+     */
+    private boolean isSegmented() {
+        return options.isSnapshotEnabled() || options.getMemoryBudget() != Long.MAX_VALUE || options.getRetentionDays() > 0;
+    }
+
+    /**
+     * Loads unchanged files from the snapshot, parses the rest, and rewrites the snapshot if
+     * anything had to be parsed or a file disappeared. With a memory budget, unchanged files are
+     * not loaded yet; the snapshot table tells their date ranges.
+     */
+    private List<Segment> readWithSnapshot(List<Path> files, List<LogReader.Range> ranges) {
+        Path snapshotPath = logDir.resolve(SnapshotFile.FILE_NAME);
+        snapshot = SnapshotFile.open(snapshotPath);
+        boolean lazy = options.getMemoryBudget() != Long.MAX_VALUE;
+        Segment[] loaded = new Segment[files.size()];
+        SnapshotFile.Block[] blocks = new SnapshotFile.Block[files.size()];
+        long[] lastModified = new long[files.size()];
+        List<LogReader.Range> changed = new ArrayList<>();
+        List<Integer> changedIndexes = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            LogReader.Range range = ranges.get(i);
+            try {
+                lastModified[i] = Files.getLastModifiedTime(range.file).toMillis();
+            } catch (IOException e) {
+                metrics.readFailed(range.file, e);
+            }
+            blocks[i] = snapshot.block(range.file.getFileName().toString(), range.end, lastModified[i]);
+            if (blocks[i] != null && lazy) {
+                loaded[i] = new Segment(range, lastModified[i], blocks[i].minDate, blocks[i].maxDate, blocks[i].rows);
+                continue;
+            }
+            LogStore store = blocks[i] == null ? null : snapshot.load(blocks[i], options.isOffHeapStore());
+            if (store == null) {
+                blocks[i] = null;
+                changed.add(range);
+                changedIndexes.add(i);
+            } else {
+                loaded[i] = new Segment(range, lastModified[i], attach(store));
+            }
+        }
+        List<LogStore> parsed = reader.readEach(changed);
+        for (int i = 0; i < parsed.size(); i++) {
+            int index = changedIndexes.get(i);
+            loaded[index] = new Segment(ranges.get(index), lastModified[index], attach(parsed.get(i)));
+        }
+
+        if (!changed.isEmpty() || snapshot.size() != files.size()) {
+            List<SnapshotFile.Entry> entries = new ArrayList<>();
+            for (int i = 0; i < files.size(); i++) {
+                LogReader.Range range = ranges.get(i);
+                String fileName = range.file.getFileName().toString();
+                LogStore store = loaded[i].store();
+                entries.add(store != null ? new SnapshotFile.Entry(fileName, range.end, lastModified[i], store)
+                        : new SnapshotFile.Entry(fileName, snapshot, blocks[i]));
+            }
+            try {
+                SnapshotFile.write(snapshotPath, entries);
+                snapshot = SnapshotFile.open(snapshotPath);
+            } catch (IOException e) {
+                metrics.readFailed(snapshotPath, e);
+            }
+        }
+        return List.of(loaded);
+    }
+
+    /**
+     * Reads the complete lines appended to the log files since the last read, and all lines of
+     * log files that appeared in the meantime, including compressed ones. A new file, compressed or
+     * not, that starts with the same line as a file read before and repeats the bytes that file was
+     * read up to is taken to be that file after rotation, such as {@code x.log} renamed to
+     * {@code x-DATE.log} and then compressed to {@code x-DATE.log.gz}; only the lines past the point
+     * that file was read to are new, so rotation does not ingest any record twice. Queries keep answering from the previous records
+     * until the new ones are published together.
+     */
+    public void refresh() {
+        synchronized (writeLock) {
+            checkOpen();
+            List<LogReader.Range> ranges = new ArrayList<>();
+            try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(logDir)) {
+                for (Path file : directoryStream) {
+                    if (isLogFile(file) && DecompressedChunks.isCompressed(file)) {
+                        // Rotated files are complete when they appear and are read once.
+                        if (!offsets.containsKey(file)) {
+                            long skip = rotatedFrom(file);
+                            if (skip == STILL_COPYING) {
                                 continue;
                             }
+                            long size = Files.size(file);
+                            ranges.add(new LogReader.Range(file, 0, size, skip));
+                            offsets.put(file, size);
+                        }
+                    } else if (isLogFile(file)) {
+                        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                        long size = attributes.size();
+                        Long known = offsets.get(file);
+                        if (known != null && isReplaced(file, attributes)) {
+                            // Rotated away and created anew: the file at this path starts over,
+                            // however far it has grown since.
+                            known = 0L;
+                            firstLines.remove(file);
+                        }
+                        long offset = known != null ? known : rotatedFrom(file);
+                        if (offset == STILL_COPYING) {
+                            continue;
+                        }
+                        if (size < offset) {
+                            // Truncated in place: the file starts over.
+                            offset = 0;
+                            firstLines.remove(file);
+                        }
+                        long end = LogReader.lastLineEnd(file, offset, size);
+                        if (end > offset) {
+                            ranges.add(new LogReader.Range(file, offset, end));
+                        }
+                        markRead(file, end, attributes.fileKey());
+                    }
+                }
+            } catch (IOException e) {
+                metrics.readFailed(logDir, e);
+            }
+            publish(ranges.isEmpty() ? null : reader.read(ranges));
+        }
+    }
 
-                            String ip = params[0];
-                            String user = params[1];
-                            Date date = readDate(params[2]);
-                            Event event = readEvent(params[3]);
-                            int eventAdditionalParameter = -1;
-                            if (event.equals(Event.SOLVE_TASK) || event.equals(Event.DONE_TASK)) {
-                                eventAdditionalParameter = readAdditionalParameter(params[3]);
-                            }
-                            Status status = readStatus(params[4]);
+    /**
+     * True if the plain log {@code file} is not the file that was read at its path before. Without
+     * file keys, a file whose first line changed is taken to be a new one.
+     */
+    private boolean isReplaced(Path file, BasicFileAttributes attributes) throws IOException {
+        Object fileKey = fileKeys.get(file);
+        if (fileKey != null && attributes.fileKey() != null) {
+            return !fileKey.equals(attributes.fileKey());
+        }
+        String firstLine = firstLines.get(file);
+        return firstLine != null && attributes.size() != offsets.get(file) && !firstLine.equals(LogReader.firstLine(file));
+    }
 
-                            LogEntity logEntity = new LogEntity(ip, user, date, event, eventAdditionalParameter, status);
-                            logEntities.add(logEntity);
-                        }
+    /**
+     * Records that the plain log {@code file} has been read up to {@code end}, a line end.
+     */
+    private void markRead(Path file, long end, Object fileKey) throws IOException {
+        offsets.put(file, end);
+        if (fileKey != null) {
+            fileKeys.put(file, fileKey);
+        }
+        String firstLine = firstLines.get(file);
+        if (firstLine == null && end > 0) {
+            firstLine = LogReader.firstLine(file);
+            if (firstLine != null) {
+                firstLines.put(file, firstLine);
+            }
+        }
+        if (firstLine == null) {
+            return;
+        }
+        List<ReadPrefix> prefixes = readPrefixes.computeIfAbsent(firstLine, ignored -> new ArrayList<>());
+        int i = 0;
+        while (i < prefixes.size() && !prefixes.get(i).file.equals(file)) {
+            i++;
+        }
+        if (i < prefixes.size() && prefixes.get(i).offset == end) {
+            return;
+        }
+        long from = Math.max(0, end - ReadPrefix.CHECKSUM_BYTES);
+        ReadPrefix prefix = new ReadPrefix(file, fileKey, end, from, LogReader.checksum(file, from, end));
+        if (i < prefixes.size()) {
+            prefixes.set(i, prefix);
+        } else {
+            prefixes.add(prefix);
+        }
+    }
+
+    /**
+     * Bytes at the start of the new {@code file}, decompressed if it is compressed, that were
+     * already read from the file it was rotated from, 0 if it was not rotated from a file read
+     * before, or {@link #STILL_COPYING}.
+     * <p>
+     * Rotation renames, copies and compresses files that were already read. The file it came from
+     * is a plain file read before that has the same first line and whose bytes just before the
+     * offset it was read to reappear in {@code file}. Other files that merely start with the same
+     * line are read from their start.
+     */
+    private long rotatedFrom(Path file) throws IOException {
+        String firstLine = LogReader.firstLine(file);
+        List<ReadPrefix> prefixes = firstLine == null ? null : readPrefixes.get(firstLine);
+        if (prefixes == null) {
+            return 0;
+        }
+        ReadPrefix source = null;
+        boolean copying = false;
+        for (ReadPrefix prefix : prefixes) {
+            if (prefix.file.equals(file) || (source != null && source.offset >= prefix.offset)) {
+                continue;
+            }
+            long checksum = LogReader.checksum(file, prefix.checksumFrom, prefix.offset);
+            if (checksum == prefix.checksum) {
+                source = prefix;
+            } else if (checksum == -1 && !copying) {
+                copying = prefix.isUnchanged() && LogReader.isPartialCopy(file, prefix.file);
+            }
+        }
+        if (source != null) {
+            metrics.rotatedBytesSkipped(file, source.file, source.offset);
+            return source.offset;
+        }
+        // Read once complete, or never if it stays a part of what was read already.
+        return copying ? STILL_COPYING : 0;
+    }
+
+    /**
+     * Publishes the appended records, if any, as one segment per day they are dated, and drops
+     * expired segments. Cached results covering the dates of either are invalidated once the new
+     * segments are visible, so a query computed from the old ones cannot be cached afterwards.
+     */
+    private void publish(LogStore store) {
+        List<Segment> updated = new ArrayList<>(segments);
+        List<Segment> changed = new ArrayList<>();
+        if (store != null && store.size() > 0) {
+            for (LogStore day : splitByDay(store)) {
+                Segment segment = new Segment(null, 0, attach(day));
+                updated.add(segment);
+                changed.add(segment);
+            }
+        }
+        changed.addAll(dropExpired(updated));
+        foldAppended(updated.subList(loadedSegmentCount, updated.size()));
+        if (!changed.isEmpty()) {
+            segments = List.copyOf(updated);
+            for (Segment segment : changed) {
+                cache.invalidate(segment.minDate(), segment.maxDate());
+            }
+        }
+    }
+
+    /**
+     * Splits a sealed store into sealed stores of the rows of one day each, in date order.
+     */
+    private static List<LogStore> splitByDay(LogStore store) {
+        if (day(store.date(0)) == day(store.date(store.size() - 1))) {
+            return List.of(store);
+        }
+        List<LogStore> days = new ArrayList<>();
+        int from = 0;
+        while (from < store.size()) {
+            int to = store.lowerBound((day(store.date(from)) + 1) * DAY_MILLIS);
+            LogStore day = new LogStore();
+            day.addAll(store, from, to);
+            day.seal();
+            days.add(day);
+            from = to;
+        }
+        return days;
+    }
+
+    private static long day(long date) {
+        return Math.floorDiv(date, DAY_MILLIS);
+    }
+
+    /**
+     * Folds the segments of appended records that share a day into one once there are more than
+     * {@link #MAX_APPENDED_STORES} of them beyond one per day. Every segment keeps the records of a
+     * single day, so retention drops appended records a day at a time.
+     */
+    private void foldAppended(List<Segment> appended) {
+        Map<Long, List<Segment>> byDay = new LinkedHashMap<>();
+        for (Segment segment : appended) {
+            byDay.computeIfAbsent(day(segment.minDate()), ignored -> new ArrayList<>()).add(segment);
+        }
+        if (appended.size() - byDay.size() <= MAX_APPENDED_STORES) {
+            return;
+        }
+        List<Segment> folded = new ArrayList<>(byDay.size());
+        for (List<Segment> parts : byDay.values()) {
+            if (parts.size() == 1) {
+                folded.add(parts.get(0));
+                continue;
+            }
+            LogStore store = new LogStore();
+            for (Segment part : parts) {
+                store.addAll(part.store());
+            }
+            store.seal();
+            folded.add(new Segment(null, 0, attach(store)));
+        }
+        appended.clear();
+        appended.addAll(folded);
+    }
+
+    /**
+     * Removes the segments whose newest record is older than the retention period and returns them.
+     */
+    private List<Segment> dropExpired(List<Segment> updated) {
+        List<Segment> dropped = new ArrayList<>();
+        if (options.getRetentionDays() == 0) {
+            return dropped;
+        }
+        long cutoff = System.currentTimeMillis() - options.getRetentionDays() * DAY_MILLIS;
+        for (int i = updated.size() - 1; i >= 0; i--) {
+            if (updated.get(i).isOlderThan(cutoff)) {
+                dropped.add(updated.remove(i));
+                if (i < loadedSegmentCount) {
+                    loadedSegmentCount--;
+                }
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * Returns the stores of the segments that may hold rows within the date range of {@code filter},
+     * loading the ones that are not in memory.
+     */
+    private List<LogStore> stores(RowFilter filter) {
+        List<Segment> current = segments;
+        List<LogStore> stores = new ArrayList<>(current.size());
+        for (Segment segment : current) {
+            if (segment.overlaps(filter.after, filter.before)) {
+                LogStore store = segment.store();
+                stores.add(store != null ? store : load(segment));
+            }
+        }
+        return stores;
+    }
+
+    /**
+     * Reads the records of an evicted segment again. Queries needing the same segment wait for one
+     * read; other segments, other queries and writers go on.
+     */
+    private LogStore load(Segment segment) {
+        LogStore store;
+        synchronized (segment) {
+            store = segment.store();
+            if (store != null) {
+                return store;
+            }
+            LogReader.Range range = segment.range();
+            SnapshotFile current = snapshot;
+            SnapshotFile.Block block = current == null ? null
+                    : current.block(range.file.getFileName().toString(), range.end, segment.lastModified());
+            store = block == null ? null : current.load(block, options.isOffHeapStore());
+            if (store == null) {
+                store = reader.read(List.of(range));
+            }
+            segment.load(attach(store));
+        }
+        evictOverBudget();
+        return store;
+    }
+
+    /**
+     * Drops the least recently used segments that can be loaded again until the loaded ones fit
+     * the memory budget.
+     */
+    private void evictOverBudget() {
+        long budget = options.getMemoryBudget();
+        if (budget == Long.MAX_VALUE) {
+            return;
+        }
+        synchronized (budgetLock) {
+            long used = 0;
+            List<Segment> evictable = new ArrayList<>();
+            for (Segment segment : segments) {
+                if (segment.isLoaded()) {
+                    used += segment.bytes();
+                    if (segment.isEvictable()) {
+                        evictable.add(segment);
                     }
                 }
             }
-        } catch (IOException e) {
-            e.printStackTrace();
+            evictable.sort(Comparator.comparingLong(Segment::lastUsed));
+            for (int i = 0; i < evictable.size() && used > budget; i++) {
+                Segment segment = evictable.get(i);
+                used -= segment.bytes();
+                segment.evict();
+            }
         }
     }
 
-    private Date readDate(String lineToParse) {
-        Date date = null;
-        try {
-            date = simpleDateFormat.parse(lineToParse);
-        } catch (ParseException e) {
+    /**
+     * Prepares a sealed store for queries: moves it off the heap if that is asked for and maps its
+     * dictionary ids to the shared ones.
+     */
+    private LogStore attach(LogStore store) {
+        if (options.isOffHeapStore() && !store.isOffHeap()) {
+            store.moveOffHeap(NativeMemory.allocate());
+        }
+        synchronized (dictionaryLock) {
+            store.attach(ipDictionary, userDictionary);
         }
-        return date;
+        return store;
     }
 
-    private Event readEvent(String lineToParse) {
-        if (lineToParse.contains("SOLVE_TASK")) return Event.SOLVE_TASK;
-        if (lineToParse.contains("DONE_TASK")) return Event.DONE_TASK;
-        return eventMap.get(lineToParse);
+    /**
+     * Returns what was ingested and queried so far, see {@link LogParserOptions#withMetricsListener}
+     * to receive the measurements as they are taken.
+     */
+    public LogParserMetrics getMetrics() {
+        return metrics.snapshot(segments);
     }
 
-    private static final Map<String, Event> eventMap = Map.of(
-            "LOGIN", Event.LOGIN,
-            "DOWNLOAD_PLUGIN", Event.DOWNLOAD_PLUGIN,
-            "WRITE_MESSAGE", Event.WRITE_MESSAGE
-    );
+    /**
+     * Registers the metrics of this parser with the platform MBean server, under
+     * {@code data:type=LogParser,name=<log directory name>}, and returns that name.
+     */
+    public ObjectName registerMetricsMBean() throws JMException {
+        ObjectName name = new ObjectName("data", new Hashtable<>(Map.of("type", "LogParser",
+                "name", ObjectName.quote(String.valueOf(logDir.getFileName())))));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(
+                new StandardMBean(new MetricsMBean(this::getMetrics), LogParserMetricsMXBean.class, true), name);
+        return name;
+    }
 
-    private int readAdditionalParameter(String lineToParse) {
-        return extractTaskParameter(lineToParse, Event.SOLVE_TASK) != -1 ?
-                extractTaskParameter(lineToParse, Event.SOLVE_TASK) :
-                extractTaskParameter(lineToParse, Event.DONE_TASK);
+    /**
+     * Returns the counters of the result cache, see {@link LogParserOptions#withResultCache}.
+     */
+    public ResultCacheStatistics getResultCacheStatistics() {
+        return cache.statistics();
     }
 
-    private int extractTaskParameter(String lineToParse, Event event) {
-        if (lineToParse.contains(event.name())) {
-            return Integer.parseInt(lineToParse.replace(event.name(), "").replaceAll(" ", ""));
+    /**
+     * Starts a daemon thread that watches the log directory and calls {@link #refresh()} whenever
+     * a file is created or modified there.
+     */
+    public void startTailing() throws IOException {
+        synchronized (writeLock) {
+            checkOpen();
+            if (tailer != null) {
+                return;
+            }
+            watchService = logDir.getFileSystem().newWatchService();
+            logDir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            WatchService watched = watchService;
+            tailer = new Thread(() -> tail(watched), "log-tailer-" + logDir.getFileName());
+            tailer.setDaemon(true);
+            tailer.start();
         }
-        return -1;
+        // Lines written before the watch was registered are not announced by any event.
+        refresh();
     }
 
-    private Status readStatus(String lineToParse) {
-        return statusMap.get(lineToParse);
+    public void stopTailing() {
+        synchronized (writeLock) {
+            if (tailer == null) {
+                return;
+            }
+            tailer.interrupt();
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                metrics.readFailed(logDir, e);
+            }
+            tailer = null;
+            watchService = null;
+        }
+    }
+
+    /**
+     * Stops tailing, ends the query threads and drops the records; queries, {@link #refresh()} and
+     * {@link #startTailing()} throw {@link IllegalStateException} afterwards. The native memory of
+     * off-heap records is released at once, so a query still running on another thread may fail
+     * with {@link IllegalStateException} too; heap records are left to the garbage collector.
+     * Closing again does nothing.
+     */
+    @Override
+    public void close() {
+        stopTailing();
+        synchronized (writeLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            List<Segment> current = segments;
+            segments = List.of();
+            for (Segment segment : current) {
+                LogStore store = segment.store();
+                segment.evict();
+                if (store != null) {
+                    store.close();
+                }
+            }
+            snapshot = null;
+            cache.invalidate(Long.MIN_VALUE, Long.MAX_VALUE);
+        }
+        reader.close();
+        scan.shutdown();
     }
 
-    private static final Map<String, Status> statusMap = Map.of(
-            "OK", Status.OK,
-            "FAILED", Status.FAILED,
-            "ERROR", Status.ERROR
-    );
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("LogParser is closed: " + logDir);
+        }
+    }
+
+    private void tail(WatchService watched) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watched.take();
+                key.pollEvents();
+                refresh();
+                if (!key.reset()) {
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // stopTailing() was called.
+        } catch (IllegalStateException e) {
+            // close() was called while an event was being handled.
+        }
+    }
+
+    /**
+     * Plain {@code .log} files, and rotated ones compressed to {@code .log.gz} or {@code .log.zst}.
+     */
+    private boolean isLogFile(Path file) {
+        String name = file.toString().toLowerCase();
+        return name.endsWith(".log") || name.endsWith(".log.gz") || name.endsWith(".log.zst");
+    }
 
     @Override
     public int getNumberOfUniqueIPs(Date after, Date before) {
-        return getUniqueIPs(after, before).size();
+        RowFilter filter = RowFilter.between(after, before);
+        return timed("getNumberOfUniqueIPs", () -> cached("numberOfUniqueIPs", filter, () -> {
+            List<LogStore> current = stores(filter);
+            if (options.isApproximateDistinctCounts()) {
+                HyperLogLog sketch = new HyperLogLog();
+                for (LogStore store : current) {
+                    store.addDistinctIPs(filter.after, filter.before, sketch);
+                }
+                return (int) sketch.estimate();
+            }
+            return ipIds(current, filter).cardinality();
+        }));
     }
 
     @Override
     public Set<String> getUniqueIPs(Date after, Date before) {
-        return logEntities.stream()
-                .filter(logEntity -> isLogEntityValid(logEntity, null, null, null, after, before))
-                .map(LogEntity::getIP)
-                .collect(Collectors.toSet());
-    }
-
-    private boolean isLogEntityValid(LogEntity logEntity, String user, Event event, Status status, Date after, Date before) {
-        boolean isUserMatch = (user == null || logEntity.getUser().equals(user));
-        boolean isEventMatch = (event == null || logEntity.getEvent().equals(event));
-        boolean isStatusMatch = (status == null || logEntity.getStatus().equals(status));
-        boolean isDateMatch = (after == null || logEntity.getDate().after(after) || logEntity.getDate().equals(after)) &&
-                (before == null || logEntity.getDate().before(before) || logEntity.getDate().equals(before));
-        return isUserMatch && isEventMatch && isStatusMatch && isDateMatch;
+        return timed("getUniqueIPs", () -> ips(RowFilter.between(after, before)));
     }
 
     @Override
     public Set<String> getIPsForUser(String user, Date after, Date before) {
-        return logEntities.stream()
-                .filter(logEntity -> isLogEntityValid(logEntity, user, null, null, after, before))
-                .map(LogEntity::getIP)
-                .collect(Collectors.toSet());
+        return timed("getIPsForUser", () -> ips(RowFilter.between(after, before).user(user)));
     }
 
     @Override
     public Set<String> getIPsForStatus(Status status, Date after, Date before) {
-        return logEntities.stream()
-                .filter(logEntity -> logEntity.getStatus().equals(status) &&
-                        (after == null || logEntity.getDate().after(after) || logEntity.getDate().equals(after)) &&
-                        (before == null || logEntity.getDate().before(before) || logEntity.getDate().equals(before)))
-                .map(LogEntity::getIP)
-                .collect(Collectors.toSet());
+        return timed("getIPsForStatus", () -> ips(RowFilter.between(after, before).status(status)));
     }
 
     @Override
     public Set<String> getIPsForEvent(Event event, Date after, Date before) {
-        return logEntities.stream()
-                .filter(logEntity -> logEntity.getEvent().equals(event) &&
-                        (after == null || logEntity.getDate().after(after) || logEntity.getDate().equals(after)) &&
-                        (before == null || logEntity.getDate().before(before) || logEntity.getDate().equals(before)))
-                .map(LogEntity::getIP)
-                .collect(Collectors.toSet());
+        return timed("getIPsForEvent", () -> ips(RowFilter.between(after, before).event(event)));
     }
 
     @Override
     public Set<String> getAllUsers() {
-        return logEntities.stream()
-                .map(LogEntity::getUser)
-                .collect(Collectors.toSet());
+        RowFilter filter = RowFilter.between(null, null);
+        return timed("getAllUsers", () -> cached("allUsers", filter, () -> {
+            BitSet ids = new BitSet(userDictionary.size());
+            for (LogStore store : stores(filter)) {
+                for (int id : store.globalUsers()) {
+                    ids.set(id);
+                }
+            }
+            return decode(ids, userDictionary);
+        }));
     }
 
     @Override
     public int getNumberOfUsers(Date after, Date before) {
-        return logEntities.stream()
-                .filter(logEntity -> (after == null || logEntity.getDate().after(after) || logEntity.getDate().equals(after)) &&
-                        (before == null || logEntity.getDate().before(before) || logEntity.getDate().equals(before)))
-                .map(LogEntity::getUser)
-                .collect(Collectors.toSet()).size();
+        RowFilter filter = RowFilter.between(after, before);
+        return timed("getNumberOfUsers", () -> cached("numberOfUsers", filter, () -> {
+            List<LogStore> current = stores(filter);
+            if (options.isApproximateDistinctCounts()) {
+                HyperLogLog sketch = new HyperLogLog();
+                for (LogStore store : current) {
+                    store.addDistinctUsers(filter.after, filter.before, sketch);
+                }
+                return (int) sketch.estimate();
+            }
+            return userIds(current, filter).cardinality();
+        }));
     }
 
     @Override
     public int getNumberOfUserEvents(String user, Date after, Date before) {
-        return logEntities.stream()
-                .filter(logEntity -> logEntity.getUser().equals(user) &&
-                        (after == null || logEntity.getDate().after(after) || logEntity.getDate().equals(after)) &&
-                        (before == null || logEntity.getDate().before(before) || logEntity.getDate().equals(before)))
-                .map(LogEntity::getEvent)
-                .collect(Collectors.toSet()).size();
+        return timed("getNumberOfUserEvents", () -> events(RowFilter.forUser(user, after, before)).size());
     }
 
     @Override
     public Set<String> getUsersForIP(String ip, Date after, Date before) {
-        return logEntities.stream()
-                .filter(logEntity -> logEntity.getIP().equals(ip) &&
-                        (after == null || logEntity.getDate().after(after) || logEntity.getDate().equals(after)) &&
-                        (before == null || logEntity.getDate().before(before) || logEntity.getDate().equals(before)))
-                .map(LogEntity::getUser)
-                .collect(Collectors.toSet());
+        return timed("getUsersForIP", () -> users(RowFilter.forIP(ip, after, before)));
     }
 
     @Override
     public Set<String> getLoggedUsers(Date after, Date before) {
-        return logEntities.stream()
-                .filter(logEntity -> logEntity.getEvent().equals(Event.LOGIN) &&
-                        (after == null || logEntity.getDate().after(after) || logEntity.getDate().equals(after)) &&
-                        (before == null || logEntity.getDate().before(before) || logEntity.getDate().equals(before)))
-                .map(LogEntity::getUser)
-                .collect(Collectors.toSet());
+        return timed("getLoggedUsers", () -> users(RowFilter.between(after, before).event(Event.LOGIN)));
     }
 
     @Override
     public Set<String> getDownloadedPluginUsers(Date after, Date before) {
-        return logEntities.stream()
-                .filter(logEntity -> logEntity.getEvent().equals(Event.DOWNLOAD_PLUGIN) &&
-                        (after == null || logEntity.getDate().after(after) || logEntity.getDate().equals(after)) &&
-                        (before == null || logEntity.getDate().before(before) || logEntity.getDate().equals(before)))
-                .map(LogEntity::getUser)
-                .collect(Collectors.toSet());
+        return timed("getDownloadedPluginUsers", () -> users(RowFilter.between(after, before).event(Event.DOWNLOAD_PLUGIN)));
     }
 
     @Override
     public Set<String> getWroteMessageUsers(Date after, Date before) {
-        return logEntities.stream()
-                .filter(logEntity -> logEntity.getEvent().equals(Event.WRITE_MESSAGE) &&
-                        (after == null || logEntity.getDate().after(after) || logEntity.getDate().equals(after)) &&
-                        (before == null || logEntity.getDate().before(before) || logEntity.getDate().equals(before)))
-                .map(LogEntity::getUser)
-                .collect(Collectors.toSet());
+        return timed("getWroteMessageUsers", () -> users(RowFilter.between(after, before).event(Event.WRITE_MESSAGE)));
     }
 
     @Override
     public Set<String> getSolvedTaskUsers(Date after, Date before) {
-        return logEntities.stream()
-                .filter(logEntity -> logEntity.getEvent().equals(Event.SOLVE_TASK) &&
-                        (after == null || logEntity.getDate().after(after) || logEntity.getDate().equals(after)) &&
-                        (before == null || logEntity.getDate().before(before) || logEntity.getDate().equals(before)))
-                .map(LogEntity::getUser)
-                .collect(Collectors.toSet());
+        return timed("getSolvedTaskUsers", () -> users(RowFilter.between(after, before).event(Event.SOLVE_TASK)));
     }
 
     @Override
     public Set<String> getSolvedTaskUsers(Date after, Date before, int task) {
-        return logEntities.stream()
-                .filter(logEntity -> logEntity.getEvent().equals(Event.SOLVE_TASK) &&
-                        logEntity.getEventAdditionalParameter() == task &&
-                        (after == null || logEntity.getDate().after(after) || logEntity.getDate().equals(after)) &&
-                        (before == null || logEntity.getDate().before(before) || logEntity.getDate().equals(before)))
-                .map(LogEntity::getUser)
-                .collect(Collectors.toSet());
+        return timed("getSolvedTaskUsers", () -> users(RowFilter.between(after, before).event(Event.SOLVE_TASK).task(task)));
     }
 
     @Override
     public Set<String> getDoneTaskUsers(Date after, Date before) {
-        return logEntities.stream()
-                .filter(logEntity -> logEntity.getEvent().equals(Event.DONE_TASK) &&
-                        (after == null || logEntity.getDate().after(after) || logEntity.getDate().equals(after)) &&
-                        (before == null || logEntity.getDate().before(before) || logEntity.getDate().equals(before)))
-                .map(LogEntity::getUser)
-                .collect(Collectors.toSet());
+        return timed("getDoneTaskUsers", () -> users(RowFilter.between(after, before).event(Event.DONE_TASK)));
     }
 
     @Override
     public Set<String> getDoneTaskUsers(Date after, Date before, int task) {
-        return logEntities.stream()
-                .filter(logEntity -> logEntity.getEvent().equals(Event.DONE_TASK) &&
-                        logEntity.getEventAdditionalParameter() == task &&
-                        (after == null || logEntity.getDate().after(after) || logEntity.getDate().equals(after)) &&
-                        (before == null || logEntity.getDate().before(before) || logEntity.getDate().equals(before)))
-                .map(LogEntity::getUser)
-                .collect(Collectors.toSet());
+        return timed("getDoneTaskUsers", () -> users(RowFilter.between(after, before).event(Event.DONE_TASK).task(task)));
     }
 
-
     @Override
     public Set<Date> getDatesForUserAndEvent(String user, Event event, Date after, Date before) {
-        return logEntities.stream()
-                .filter(logEntity -> logEntity.getUser().equals(user) &&
-                        logEntity.getEvent().equals(event) &&
-                        (after == null || logEntity.getDate().after(after) || logEntity.getDate().equals(after)) &&
-                        (before == null || logEntity.getDate().before(before) || logEntity.getDate().equals(before)))
-                .map(LogEntity::getDate)
-                .collect(Collectors.toSet());
+        return timed("getDatesForUserAndEvent", () -> dates(RowFilter.forUser(user, after, before).event(event)));
     }
 
     @Override
     public Set<Date> getDatesWhenSomethingFailed(Date after, Date before) {
-        return logEntities.stream()
-                .filter(logEntity -> logEntity.getStatus().equals(Status.FAILED) &&
-                        (after == null || logEntity.getDate().after(after) || logEntity.getDate().equals(after)) &&
-                        (before == null || logEntity.getDate().before(before) || logEntity.getDate().equals(before)))
-                .map(LogEntity::getDate)
-                .collect(Collectors.toSet());
+        return timed("getDatesWhenSomethingFailed", () -> dates(RowFilter.between(after, before).status(Status.FAILED)));
     }
 
     @Override
     public Set<Date> getDatesWhenErrorHappened(Date after, Date before) {
-        return logEntities.stream()
-                .filter(logEntity -> logEntity.getStatus().equals(Status.ERROR) &&
-                        (after == null || logEntity.getDate().after(after) || logEntity.getDate().equals(after)) &&
-                        (before == null || logEntity.getDate().before(before) || logEntity.getDate().equals(before)))
-                .map(LogEntity::getDate)
-                .collect(Collectors.toSet());
+        return timed("getDatesWhenErrorHappened", () -> dates(RowFilter.between(after, before).status(Status.ERROR)));
     }
 
     @Override
     public Date getDateWhenUserLoggedFirstTime(String user, Date after, Date before) {
-        return logEntities.stream()
-                .filter(logEntity -> logEntity.getUser().equals(user) &&
-                        logEntity.getEvent().equals(Event.LOGIN) &&
-                        (after == null || logEntity.getDate().after(after) || logEntity.getDate().equals(after)) &&
-                        (before == null || logEntity.getDate().before(before) || logEntity.getDate().equals(before)))
-                .map(LogEntity::getDate)
-                .min(Date::compareTo)
-                .orElse(null);
+        return timed("getDateWhenUserLoggedFirstTime", () -> firstDate(RowFilter.forUser(user, after, before).event(Event.LOGIN)));
     }
 
-
     @Override
     public Date getDateWhenUserSolvedTask(String user, int task, Date after, Date before) {
-        return logEntities.stream()
-                .filter(logEntity -> logEntity.getUser().equals(user) &&
-                        logEntity.getEvent().equals(Event.SOLVE_TASK) &&
-                        logEntity.getEventAdditionalParameter() == task &&
-                        (after == null || logEntity.getDate().after(after) || logEntity.getDate().equals(after)) &&
-                        (before == null || logEntity.getDate().before(before) || logEntity.getDate().equals(before)))
-                .map(LogEntity::getDate)
-                .min(Date::compareTo)
-                .orElse(null);
+        return timed("getDateWhenUserSolvedTask", () -> firstDate(RowFilter.forUser(user, after, before).event(Event.SOLVE_TASK).task(task)));
     }
 
     @Override
     public Date getDateWhenUserDoneTask(String user, int task, Date after, Date before) {
-        return logEntities.stream()
-                .filter(logEntity -> logEntity.getUser().equals(user) &&
-                        logEntity.getEvent().equals(Event.DONE_TASK) &&
-                        logEntity.getEventAdditionalParameter() == task &&
-                        (after == null || logEntity.getDate().after(after) || logEntity.getDate().equals(after)) &&
-                        (before == null || logEntity.getDate().before(before) || logEntity.getDate().equals(before)))
-                .map(LogEntity::getDate)
-                .min(Date::compareTo)
-                .orElse(null);
+        return timed("getDateWhenUserDoneTask", () -> firstDate(RowFilter.forUser(user, after, before).event(Event.DONE_TASK).task(task)));
     }
 
     @Override
     public Set<Date> getDatesWhenUserWroteMessage(String user, Date after, Date before) {
-        return logEntities.stream()
-                .filter(logEntity -> logEntity.getUser().equals(user) &&
-                        logEntity.getEvent().equals(Event.WRITE_MESSAGE) &&
-                        (after == null || logEntity.getDate().after(after) || logEntity.getDate().equals(after)) &&
-                        (before == null || logEntity.getDate().before(before) || logEntity.getDate().equals(before)))
-                .map(LogEntity::getDate)
-                .collect(Collectors.toSet());
+        return timed("getDatesWhenUserWroteMessage", () -> dates(RowFilter.forUser(user, after, before).event(Event.WRITE_MESSAGE)));
     }
 
     @Override
     public Set<Date> getDatesWhenUserDownloadedPlugin(String user, Date after, Date before) {
-        return logEntities.stream()
-                .filter(logEntity -> logEntity.getUser().equals(user) &&
-                        logEntity.getEvent().equals(Event.DOWNLOAD_PLUGIN) &&
-                        (after == null || logEntity.getDate().after(after) || logEntity.getDate().equals(after)) &&
-                        (before == null || logEntity.getDate().before(before) || logEntity.getDate().equals(before)))
-                .map(LogEntity::getDate)
-                .collect(Collectors.toSet());
+        return timed("getDatesWhenUserDownloadedPlugin", () -> dates(RowFilter.forUser(user, after, before).event(Event.DOWNLOAD_PLUGIN)));
     }
 
     @Override
     public int getNumberOfAllEvents(Date after, Date before) {
-        return getAllEvents(after, before).size();
+        return timed("getNumberOfAllEvents", () -> events(RowFilter.between(after, before)).size());
     }
 
     @Override
     public Set<Event> getAllEvents(Date after, Date before) {
-        return logEntities.stream()
-                .filter(logEntity -> (after == null || logEntity.getDate().after(after) || logEntity.getDate().equals(after)) &&
-                        (before == null || logEntity.getDate().before(before) || logEntity.getDate().equals(before)))
-                .map(LogEntity::getEvent)
-                .collect(Collectors.toSet());
+        return timed("getAllEvents", () -> events(RowFilter.between(after, before)));
     }
 
     @Override
     public Set<Event> getEventsForIP(String ip, Date after, Date before) {
-        return logEntities.stream()
-                .filter(logEntity -> logEntity.getIP().equals(ip) &&
-                        (after == null || logEntity.getDate().after(after) || logEntity.getDate().equals(after)) &&
-                        (before == null || logEntity.getDate().before(before) || logEntity.getDate().equals(before)))
-                .map(LogEntity::getEvent)
-                .collect(Collectors.toSet());
+        return timed("getEventsForIP", () -> events(RowFilter.forIP(ip, after, before)));
     }
 
     @Override
     public Set<Event> getEventsForUser(String user, Date after, Date before) {
-        return logEntities.stream()
-                .filter(logEntity -> logEntity.getUser().equals(user) &&
-                        (after == null || logEntity.getDate().after(after) || logEntity.getDate().equals(after)) &&
-                        (before == null || logEntity.getDate().before(before) || logEntity.getDate().equals(before)))
-                .map(LogEntity::getEvent)
-                .collect(Collectors.toSet());
+        return timed("getEventsForUser", () -> events(RowFilter.forUser(user, after, before)));
     }
 
     @Override
     public Set<Event> getFailedEvents(Date after, Date before) {
-        return logEntities.stream()
-                .filter(logEntity -> logEntity.getStatus().equals(Status.FAILED) &&
-                        (after == null || logEntity.getDate().after(after) || logEntity.getDate().equals(after)) &&
-                        (before == null || logEntity.getDate().before(before) || logEntity.getDate().equals(before)))
-                .map(LogEntity::getEvent)
-                .collect(Collectors.toSet());
+        return timed("getFailedEvents", () -> events(RowFilter.between(after, before).status(Status.FAILED)));
     }
 
     @Override
     public Set<Event> getErrorEvents(Date after, Date before) {
-        return logEntities.stream()
-                .filter(logEntity -> logEntity.getStatus().equals(Status.ERROR) &&
-                        (after == null || logEntity.getDate().after(after) || logEntity.getDate().equals(after)) &&
-                        (before == null || logEntity.getDate().before(before) || logEntity.getDate().equals(before)))
-                .map(LogEntity::getEvent)
-                .collect(Collectors.toSet());
+        return timed("getErrorEvents", () -> events(RowFilter.between(after, before).status(Status.ERROR)));
     }
 
     @Override
     public int getNumberOfAttemptToSolveTask(int task, Date after, Date before) {
-        return (int) logEntities.stream()
-                .filter(logEntity -> logEntity.getEventAdditionalParameter() == task &&
-                        logEntity.getEvent().equals(Event.SOLVE_TASK) &&
-                        (after == null || logEntity.getDate().after(after) || logEntity.getDate().equals(after)) &&
-                        (before == null || logEntity.getDate().before(before) || logEntity.getDate().equals(before)))
-                .count();
+        return timed("getNumberOfAttemptToSolveTask", () -> count(RowFilter.between(after, before).event(Event.SOLVE_TASK).task(task)));
     }
 
     @Override
     public int getNumberOfSuccessfulAttemptToSolveTask(int task, Date after, Date before) {
-        return (int) logEntities.stream()
-                .filter(logEntity -> logEntity.getEventAdditionalParameter() == task &&
-                        logEntity.getEvent().equals(Event.DONE_TASK) &&
-                        (after == null || logEntity.getDate().after(after) || logEntity.getDate().equals(after)) &&
-                        (before == null || logEntity.getDate().before(before) || logEntity.getDate().equals(before)))
-                .count();
+        return timed("getNumberOfSuccessfulAttemptToSolveTask", () -> count(RowFilter.between(after, before).event(Event.DONE_TASK).task(task)));
     }
 
     @Override
     public Map<Integer, Integer> getAllSolvedTasksAndTheirNumber(Date after, Date before) {
-        return logEntities.stream()
-                .filter(logEntity -> logEntity.getEvent().equals(Event.SOLVE_TASK) &&
-                        (after == null || logEntity.getDate().after(after) || logEntity.getDate().equals(after)) &&
-                        (before == null || logEntity.getDate().before(before) || logEntity.getDate().equals(before)))
-                .map(LogEntity::getEventAdditionalParameter)
-                .collect(Collectors.toMap(task -> task, task -> 1, Integer::sum));
+        return timed("getAllSolvedTasksAndTheirNumber", () -> tasks(RowFilter.between(after, before).event(Event.SOLVE_TASK)));
     }
 
     @Override
     public Map<Integer, Integer> getAllDoneTasksAndTheirNumber(Date after, Date before) {
-        return logEntities.stream()
-                .filter(logEntity -> logEntity.getEvent().equals(Event.DONE_TASK) &&
-                        (after == null || logEntity.getDate().after(after) || logEntity.getDate().equals(after)) &&
-                        (before == null || logEntity.getDate().before(before) || logEntity.getDate().equals(before)))
-                .map(LogEntity::getEventAdditionalParameter)
-                .collect(Collectors.toMap(task -> task, task -> 1, Integer::sum));
+        return timed("getAllDoneTasksAndTheirNumber", () -> tasks(RowFilter.between(after, before).event(Event.DONE_TASK)));
+    }
+
+    @Override
+    public Set<String> getIPsForSubnet(String cidr, Date after, Date before) {
+        return timed("getIPsForSubnet", () -> ips(RowFilter.between(after, before).subnet(IPv4.Subnet.parse(cidr))));
+    }
+
+    @Override
+    public Set<String> getUsersForSubnet(String cidr, Date after, Date before) {
+        return timed("getUsersForSubnet", () -> users(RowFilter.between(after, before).subnet(IPv4.Subnet.parse(cidr))));
+    }
+
+    @Override
+    public Set<Event> getEventsForSubnet(String cidr, Date after, Date before) {
+        return timed("getEventsForSubnet", () -> events(RowFilter.between(after, before).subnet(IPv4.Subnet.parse(cidr))));
+    }
+
+    @Override
+    public int getNumberOfRecordsForSubnet(String cidr, Date after, Date before) {
+        return timed("getNumberOfRecordsForSubnet", () -> count(RowFilter.between(after, before).subnet(IPv4.Subnet.parse(cidr))));
+    }
+
+    @Override
+    public Map<String, Map<Integer, TaskProgress>> getTaskProgress(Date after, Date before) {
+        RowFilter filter = RowFilter.between(after, before);
+        return timed("getTaskProgress", () -> cached("taskProgress", filter, () -> analytics(filter).progress()));
+    }
+
+    @Override
+    public Map<Integer, TaskFunnel> getTaskFunnels(Date after, Date before) {
+        RowFilter filter = RowFilter.between(after, before);
+        return timed("getTaskFunnels", () -> cached("taskFunnels", filter, () -> analytics(filter).funnels()));
+    }
+
+    @Override
+    public Map<String, UserSessions> getUserSessions(Date after, Date before) {
+        RowFilter filter = RowFilter.between(after, before);
+        return timed("getUserSessions", () -> cached("userSessions", filter, () -> analytics(filter).sessions()));
+    }
+
+    @Override
+    public List<HeavyHitter> getTopIPs(int k, Event event, Status status, Date after, Date before) {
+        RowFilter filter = topKFilter(k, event, status, after, before);
+        return timed("getTopIPs", () -> cache.get(List.of("topIPs", k, filter), filter.after, filter.before,
+                () -> topK(k, filter, true)));
+    }
+
+    @Override
+    public List<HeavyHitter> getTopUsers(int k, Event event, Status status, Date after, Date before) {
+        RowFilter filter = topKFilter(k, event, status, after, before);
+        return timed("getTopUsers", () -> cache.get(List.of("topUsers", k, filter), filter.after, filter.before,
+                () -> topK(k, filter, false)));
+    }
+
+    private static RowFilter topKFilter(int k, Event event, Status status, Date after, Date before) {
+        if (k < 1 || k > MAX_K) {
+            throw new IllegalArgumentException("k must be within [1, " + MAX_K + "]: " + k);
+        }
+        RowFilter filter = RowFilter.between(after, before);
+        if (event != null) {
+            filter = filter.event(event);
+        }
+        return status != null ? filter.status(status) : filter;
+    }
+
+    /**
+     * Counts the rows of small ranges exactly and merges the heavy hitter sketches of the stores
+     * otherwise.
+     */
+    private List<HeavyHitter> topK(int k, RowFilter filter, boolean byIP) {
+        List<LogStore> current = stores(filter);
+        long rows = 0;
+        for (LogStore store : current) {
+            rows += store.upperBound(filter.before) - store.lowerBound(filter.after);
+        }
+        GlobalDictionary dictionary = byIP ? ipDictionary : userDictionary;
+        FrequentItems items;
+        if (rows <= EXACT_TOP_K_ROWS) {
+            items = scan.collect(current, filter, FrequentItems::exact, (counts, store, row) -> {
+                counts.add(byIP ? store.globalIp(row) : store.globalUser(row), 1);
+                return true;
+            }, (counts, other) -> other.counts().forEach(counts::add));
+        } else {
+            items = new FrequentItems(MAX_K);
+            for (LogStore store : current) {
+                if (byIP) {
+                    store.addTopIPs(filter, MAX_K, items);
+                } else {
+                    store.addTopUsers(filter, MAX_K, items);
+                }
+            }
+            items.reduce();
+        }
+        List<HeavyHitter> top = new ArrayList<>(k);
+        for (int id : items.top(k)) {
+            top.add(new HeavyHitter(dictionary.valueOf(id), items.counts().get(id), items.error()));
+        }
+        return Collections.unmodifiableList(top);
+    }
+
+    private TaskAnalytics analytics(RowFilter filter) {
+        return new TaskAnalytics(stores(filter), filter.after, filter.before, userDictionary);
+    }
+
+    @Override
+    public Stream<String> streamUniqueIPs(Date after, Date before) {
+        return timed("streamUniqueIPs", () -> ipStream(RowFilter.between(after, before)));
+    }
+
+    @Override
+    public Stream<String> streamIPsForUser(String user, Date after, Date before) {
+        return timed("streamIPsForUser", () -> ipStream(RowFilter.between(after, before).user(user)));
+    }
+
+    @Override
+    public Stream<String> streamIPsForStatus(Status status, Date after, Date before) {
+        return timed("streamIPsForStatus", () -> ipStream(RowFilter.between(after, before).status(status)));
     }
 
+    @Override
+    public Stream<String> streamIPsForEvent(Event event, Date after, Date before) {
+        return timed("streamIPsForEvent", () -> ipStream(RowFilter.between(after, before).event(event)));
+    }
+
+    @Override
+    public Stream<String> streamAllUsers() {
+        return timed("streamAllUsers", () -> RowStreams.allUsers(stores(RowFilter.between(null, null)), userDictionary));
+    }
+
+    @Override
+    public Stream<String> streamUsersForIP(String ip, Date after, Date before) {
+        return timed("streamUsersForIP", () -> userStream(RowFilter.forIP(ip, after, before)));
+    }
+
+    @Override
+    public Stream<String> streamLoggedUsers(Date after, Date before) {
+        return timed("streamLoggedUsers", () -> userStream(RowFilter.between(after, before).event(Event.LOGIN)));
+    }
+
+    @Override
+    public Stream<String> streamDownloadedPluginUsers(Date after, Date before) {
+        return timed("streamDownloadedPluginUsers", () -> userStream(RowFilter.between(after, before).event(Event.DOWNLOAD_PLUGIN)));
+    }
+
+    @Override
+    public Stream<String> streamWroteMessageUsers(Date after, Date before) {
+        return timed("streamWroteMessageUsers", () -> userStream(RowFilter.between(after, before).event(Event.WRITE_MESSAGE)));
+    }
+
+    @Override
+    public Stream<String> streamSolvedTaskUsers(Date after, Date before) {
+        return timed("streamSolvedTaskUsers", () -> userStream(RowFilter.between(after, before).event(Event.SOLVE_TASK)));
+    }
+
+    @Override
+    public Stream<String> streamSolvedTaskUsers(Date after, Date before, int task) {
+        return timed("streamSolvedTaskUsers", () -> userStream(RowFilter.between(after, before).event(Event.SOLVE_TASK).task(task)));
+    }
+
+    @Override
+    public Stream<String> streamDoneTaskUsers(Date after, Date before) {
+        return timed("streamDoneTaskUsers", () -> userStream(RowFilter.between(after, before).event(Event.DONE_TASK)));
+    }
+
+    @Override
+    public Stream<String> streamDoneTaskUsers(Date after, Date before, int task) {
+        return timed("streamDoneTaskUsers", () -> userStream(RowFilter.between(after, before).event(Event.DONE_TASK).task(task)));
+    }
+
+    @Override
+    public Stream<Date> streamDatesForUserAndEvent(String user, Event event, Date after, Date before) {
+        return timed("streamDatesForUserAndEvent", () -> dateStream(RowFilter.forUser(user, after, before).event(event)));
+    }
+
+    @Override
+    public Stream<Date> streamDatesWhenSomethingFailed(Date after, Date before) {
+        return timed("streamDatesWhenSomethingFailed", () -> dateStream(RowFilter.between(after, before).status(Status.FAILED)));
+    }
+
+    @Override
+    public Stream<Date> streamDatesWhenErrorHappened(Date after, Date before) {
+        return timed("streamDatesWhenErrorHappened", () -> dateStream(RowFilter.between(after, before).status(Status.ERROR)));
+    }
+
+    @Override
+    public Stream<Date> streamDatesWhenUserWroteMessage(String user, Date after, Date before) {
+        return timed("streamDatesWhenUserWroteMessage", () -> dateStream(RowFilter.forUser(user, after, before).event(Event.WRITE_MESSAGE)));
+    }
+
+    @Override
+    public Stream<Date> streamDatesWhenUserDownloadedPlugin(String user, Date after, Date before) {
+        return timed("streamDatesWhenUserDownloadedPlugin", () -> dateStream(RowFilter.forUser(user, after, before).event(Event.DOWNLOAD_PLUGIN)));
+    }
+
+    @Override
+    public Stream<Event> streamAllEvents(Date after, Date before) {
+        return timed("streamAllEvents", () -> eventStream(RowFilter.between(after, before)));
+    }
+
+    @Override
+    public Stream<Event> streamEventsForIP(String ip, Date after, Date before) {
+        return timed("streamEventsForIP", () -> eventStream(RowFilter.forIP(ip, after, before)));
+    }
+
+    @Override
+    public Stream<Event> streamEventsForUser(String user, Date after, Date before) {
+        return timed("streamEventsForUser", () -> eventStream(RowFilter.forUser(user, after, before)));
+    }
+
+    @Override
+    public Stream<Event> streamFailedEvents(Date after, Date before) {
+        return timed("streamFailedEvents", () -> eventStream(RowFilter.between(after, before).status(Status.FAILED)));
+    }
+
+    @Override
+    public Stream<Event> streamErrorEvents(Date after, Date before) {
+        return timed("streamErrorEvents", () -> eventStream(RowFilter.between(after, before).status(Status.ERROR)));
+    }
+
+    @Override
+    public Map<BatchRequest, Object> executeBatch(Collection<BatchRequest> requests, Date after, Date before) {
+        RowFilter filter = RowFilter.between(after, before);
+        return timed("executeBatch", () -> cache.get(List.of("batch", List.copyOf(requests), filter), filter.after, filter.before,
+                () -> new BatchScan(requests, after, before, ipDictionary, userDictionary).execute(stores(filter))));
+    }
+
+    /**
+     * Runs a QL query, see {@link QLPlan} for the grammar. Returns null if the query is not valid or
+     * has {@code ?} placeholders. Parsed plans are cached by query text.
+     */
     @Override
     public Set<?> execute(String query) {
-        return switch (query) {
-            case "get ip" -> new HashSet<>(getUniqueIPs(null, null));
-            case "get user" -> new HashSet<>(getAllUsers());
-            case "get date" -> new HashSet<>(getAllDates());
-            case "get event" -> new HashSet<>(getAllEvents(null, null));
-            case "get status" -> new HashSet<>(getAllStatuses());
-            default -> null;
+        QLPlan plan;
+        QLPlan.Bound bound;
+        try {
+            plan = plan(query);
+            if (plan.parameterCount() != 0) {
+                return null;
+            }
+            bound = plan.bind();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return timed("execute", () -> execute(plan, bound));
+    }
+
+    @Override
+    public PreparedQuery prepare(String query) {
+        QLPlan plan = plan(query);
+        return new PreparedQuery() {
+            @Override
+            public Set<?> execute(Object... parameters) {
+                return timed("PreparedQuery.execute", () -> LogParser.this.execute(plan, plan.bind(parameters)));
+            }
+
+            @Override
+            public Stream<?> stream(Object... parameters) {
+                return timed("PreparedQuery.stream", () -> LogParser.this.stream(plan, plan.bind(parameters)));
+            }
+
+            @Override
+            public int getParameterCount() {
+                return plan.parameterCount();
+            }
         };
     }
 
+    @Override
+    public Stream<?> stream(String query) {
+        QLPlan plan = plan(query);
+        return timed("stream", () -> stream(plan, plan.bind()));
+    }
+
+    private QLPlan plan(String query) {
+        QLPlan plan = plans.get(query);
+        if (plan == null) {
+            plan = QLPlan.parse(query);
+            plans.put(query, plan);
+        }
+        return plan;
+    }
+
+    private Set<?> execute(QLPlan plan, QLPlan.Bound bound) {
+        if (plan.isUnfiltered() && bound.target == QLPlan.Field.STATUS) {
+            return getAllStatuses();
+        }
+        return switch (bound.target) {
+            case IP -> ips(bound.filter);
+            case USER -> users(bound.filter);
+            case DATE -> dates(bound.filter);
+            case EVENT -> events(bound.filter);
+            case STATUS -> statuses(bound.filter);
+        };
+    }
+
+    private Stream<?> stream(QLPlan plan, QLPlan.Bound bound) {
+        if (plan.isUnfiltered() && bound.target == QLPlan.Field.STATUS) {
+            return getAllStatuses().stream();
+        }
+        return switch (bound.target) {
+            case IP -> ipStream(bound.filter);
+            case USER -> userStream(bound.filter);
+            case DATE -> dateStream(bound.filter);
+            case EVENT -> eventStream(bound.filter);
+            case STATUS -> statusStream(bound.filter);
+        };
+    }
+
+    private Stream<String> ipStream(RowFilter filter) {
+        return RowStreams.ips(stores(filter), filter, ipDictionary);
+    }
+
+    private Stream<String> userStream(RowFilter filter) {
+        return RowStreams.users(stores(filter), filter, userDictionary);
+    }
+
+    private Stream<Date> dateStream(RowFilter filter) {
+        return RowStreams.dates(stores(filter), filter);
+    }
+
+    private Stream<Event> eventStream(RowFilter filter) {
+        return RowStreams.events(stores(filter), filter);
+    }
+
+    private Stream<Status> statusStream(RowFilter filter) {
+        return RowStreams.statuses(stores(filter), filter);
+    }
 
     private Set<Status> getAllStatuses() {
         return EnumSet.allOf(Status.class);
     }
 
-    private Set<Date> getAllDates() {
-        return logEntities.stream()
-                .map(LogEntity::getDate)
-                .collect(Collectors.toSet());
+    /**
+     * Runs a query method and records its latency under {@code method}.
+     */
+    private <T> T timed(String method, Supplier<T> query) {
+        checkOpen();
+        long start = System.nanoTime();
+        T result = query.get();
+        metrics.queryCompleted(method, System.nanoTime() - start);
+        return result;
+    }
+
+    /*
+     * Every query that returns a complete result goes through one of the cached methods below.
+     */
+
+    private <T> T cached(String kind, RowFilter filter, Supplier<T> query) {
+        return cache.get(List.of(kind, filter), filter.after, filter.before, query);
+    }
+
+    private Set<String> ips(RowFilter filter) {
+        return cached("ips", filter, () -> computeIps(filter));
+    }
+
+    private Set<String> users(RowFilter filter) {
+        return cached("users", filter, () -> computeUsers(filter));
+    }
+
+    private Set<Date> dates(RowFilter filter) {
+        return cached("dates", filter, () -> computeDates(filter));
+    }
+
+    private Date firstDate(RowFilter filter) {
+        return cached("firstDate", filter, () -> computeFirstDate(filter));
     }
 
-    private class LogEntity {
-        private final String IP;
-        private final String user;
-        private final Date date;
-        private final Event event;
-        private final int eventAdditionalParameter;
-        private final Status status;
+    private Set<Status> statuses(RowFilter filter) {
+        return cached("statuses", filter, () -> computeStatuses(filter));
+    }
+
+    private Set<Event> events(RowFilter filter) {
+        return cached("events", filter, () -> computeEvents(filter));
+    }
+
+    private int count(RowFilter filter) {
+        return cached("count", filter, () -> computeCount(filter));
+    }
 
-        public LogEntity(String IP, String user, Date date, Event event, int eventAdditionalParameter, Status status) {
-            this.IP = IP;
-            this.user = user;
-            this.date = date;
-            this.event = event;
-            this.eventAdditionalParameter = eventAdditionalParameter;
-            this.status = status;
+    private Map<Integer, Integer> tasks(RowFilter filter) {
+        return cached("tasks", filter, () -> computeTasks(filter));
+    }
+
+    private Set<String> computeIps(RowFilter filter) {
+        return decode(ipIds(stores(filter), filter), ipDictionary);
+    }
+
+    private Set<String> computeUsers(RowFilter filter) {
+        return decode(userIds(stores(filter), filter), userDictionary);
+    }
+
+    private BitSet ipIds(List<LogStore> stores, RowFilter filter) {
+        int size = ipDictionary.size();
+        return scan.collect(stores, filter, () -> new BitSet(size), (ids, store, row) -> {
+            ids.set(store.globalIp(row));
+            return true;
+        }, BitSet::or);
+    }
+
+    private BitSet userIds(List<LogStore> stores, RowFilter filter) {
+        int size = userDictionary.size();
+        return scan.collect(stores, filter, () -> new BitSet(size), (ids, store, row) -> {
+            ids.set(store.globalUser(row));
+            return true;
+        }, BitSet::or);
+    }
+
+    private static Set<String> decode(BitSet ids, GlobalDictionary dictionary) {
+        Set<String> values = new HashSet<>(ids.cardinality() * 4 / 3 + 1);
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            values.add(dictionary.valueOf(id));
         }
+        return values;
+    }
+
+    private Set<Date> computeDates(RowFilter filter) {
+        return scan.collect(stores(filter), filter, HashSet::new, (dates, store, row) -> {
+            dates.add(new Date(store.date(row)));
+            return true;
+        }, Set::addAll);
+    }
+
+    /**
+     * Each partition of a sealed store stops at its first match, which is also its earliest.
+     */
+    private Date computeFirstDate(RowFilter filter) {
+        long[] first = scan.collect(stores(filter), filter, () -> new long[]{Long.MAX_VALUE}, (earliest, store, row) -> {
+            earliest[0] = Math.min(earliest[0], store.date(row));
+            return !store.isSealed();
+        }, (earliest, other) -> earliest[0] = Math.min(earliest[0], other[0]));
+        return first[0] != Long.MAX_VALUE ? new Date(first[0]) : null;
+    }
 
-        public String getIP() {
-            return IP;
+    /*
+     * The grouped queries below are answered from the rollup of a store where it can, and by a
+     * scan of its rows otherwise.
+     */
+
+    private Set<Status> computeStatuses(RowFilter filter) {
+        Set<Status> statuses = EnumSet.noneOf(Status.class);
+        for (LogStore store : stores(filter)) {
+            if (!store.rollUp(filter, (event, status, task, count) -> statuses.add(status))) {
+                scan.collect(store, filter, statuses, () -> EnumSet.noneOf(Status.class), (found, scanned, row) -> {
+                    found.add(scanned.status(row));
+                    return true;
+                }, Set::addAll);
+            }
         }
+        return statuses;
+    }
 
-        public String getUser() {
-            return user;
+    private Set<Event> computeEvents(RowFilter filter) {
+        Set<Event> events = EnumSet.noneOf(Event.class);
+        for (LogStore store : stores(filter)) {
+            if (!store.rollUp(filter, (event, status, task, count) -> events.add(event))) {
+                scan.collect(store, filter, events, () -> EnumSet.noneOf(Event.class), (found, scanned, row) -> {
+                    found.add(scanned.event(row));
+                    return true;
+                }, Set::addAll);
+            }
         }
+        return events;
+    }
 
-        public Date getDate() {
-            return date;
+    private int computeCount(RowFilter filter) {
+        int[] total = {0};
+        for (LogStore store : stores(filter)) {
+            if (!store.rollUp(filter, (event, status, task, count) -> total[0] += count)) {
+                scan.collect(store, filter, total, () -> new int[1], (partial, scanned, row) -> {
+                    partial[0]++;
+                    return true;
+                }, (partial, other) -> partial[0] += other[0]);
+            }
         }
+        return total[0];
+    }
 
-        public Event getEvent() {
-            return event;
+    private Map<Integer, Integer> computeTasks(RowFilter filter) {
+        Map<Integer, Integer> tasks = new HashMap<>();
+        for (LogStore store : stores(filter)) {
+            if (!store.rollUp(filter, (event, status, task, count) -> tasks.merge(task, count, Integer::sum))) {
+                scan.<Map<Integer, Integer>>collect(store, filter, tasks, HashMap::new, (partial, scanned, row) -> {
+                    partial.merge(scanned.task(row), 1, Integer::sum);
+                    return true;
+                }, (partial, other) -> other.forEach((task, count) -> partial.merge(task, count, Integer::sum)));
+            }
         }
+        return tasks;
+    }
 
-        public int getEventAdditionalParameter() {
-            return eventAdditionalParameter;
+    /**
+     * How far a plain log file was read, with a checksum of the bytes just before that offset that
+     * a file rotated from it must repeat.
+     */
+    private static final class ReadPrefix {
+        static final long CHECKSUM_BYTES = 4096;
+
+        final Path file;
+        final Object fileKey;
+        final long offset;
+        final long checksumFrom;
+        final long checksum;
+
+        ReadPrefix(Path file, Object fileKey, long offset, long checksumFrom, long checksum) {
+            this.file = file;
+            this.fileKey = fileKey;
+            this.offset = offset;
+            this.checksumFrom = checksumFrom;
+            this.checksum = checksum;
         }
 
-        public Status getStatus() {
-            return status;
+        /**
+         * True if {@link #file} is still the file that was read, neither gone nor replaced.
+         */
+        boolean isUnchanged() throws IOException {
+            if (!Files.exists(file)) {
+                return false;
+            }
+            return fileKey == null || fileKey.equals(Files.readAttributes(file, BasicFileAttributes.class).fileKey());
         }
     }
-}
\ No newline at end of file
+}
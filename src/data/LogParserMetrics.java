@@ -0,0 +1,244 @@
+package data;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Ingestion and query measurements of a {@link LogParser} since it was created, as of one moment;
+ * see {@link LogParser#getMetrics()}.
+ */
+public final class LogParserMetrics {
+    /**
+     * What was parsed from one log file.
+     */
+    public static final class FileIngestion {
+        private final long lines;
+        private final Map<RejectReason, Long> rejectedLines;
+        private final long bytes;
+        private final long nanos;
+        private final long lastReadMillis;
+
+        FileIngestion(long lines, Map<RejectReason, Long> rejectedLines, long bytes, long nanos, long lastReadMillis) {
+            this.lines = lines;
+            this.rejectedLines = rejectedLines;
+            this.bytes = bytes;
+            this.nanos = nanos;
+            this.lastReadMillis = lastReadMillis;
+        }
+
+        /**
+         * Lines that became records.
+         */
+        public long getLines() {
+            return lines;
+        }
+
+        /**
+         * Lines that were skipped, by reason; reasons that did not occur are left out.
+         */
+        public Map<RejectReason, Long> getRejectedLines() {
+            return rejectedLines;
+        }
+
+        /**
+         * Bytes of the file that were read, compressed for a compressed file.
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Time spent tokenizing the file, summed over the threads that read it.
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * Lines, accepted or not, per second of tokenizing time.
+         */
+        public double getLinesPerSecond() {
+            long total = lines;
+            for (long rejected : rejectedLines.values()) {
+                total += rejected;
+            }
+            return perSecond(total, nanos);
+        }
+
+        public double getBytesPerSecond() {
+            return perSecond(bytes, nanos);
+        }
+
+        /**
+         * When lines of the file were last read, in epoch millis; a file that keeps growing while
+         * this stays behind points to a stalled tailer.
+         */
+        public long getLastReadMillis() {
+            return lastReadMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "lines=" + lines + " rejected=" + rejectedLines + " bytes=" + bytes
+                    + String.format(" lines/s=%.0f bytes/s=%.0f", getLinesPerSecond(), getBytesPerSecond());
+        }
+    }
+
+    /**
+     * Latency distribution of one query method; percentiles are bucket upper bounds, see
+     * {@link LatencyHistogram}.
+     */
+    public static final class QueryLatency {
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+        private final long medianNanos;
+        private final long p99Nanos;
+
+        QueryLatency(long count, long totalNanos, long maxNanos, long medianNanos, long p99Nanos) {
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.medianNanos = medianNanos;
+            this.p99Nanos = p99Nanos;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        /**
+         * Mean latency, or 0 before the first call.
+         */
+        public long getMeanNanos() {
+            return count == 0 ? 0 : totalNanos / count;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        public long getMedianNanos() {
+            return medianNanos;
+        }
+
+        public long getP99Nanos() {
+            return p99Nanos;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + " mean=" + getMeanNanos() + "ns p50<" + medianNanos + "ns p99<" + p99Nanos
+                    + "ns max=" + maxNanos + "ns";
+        }
+    }
+
+    private final Map<Path, FileIngestion> files;
+    private final Map<RejectReason, Long> rejectedLines;
+    private final long readErrors;
+    private final long rotatedBytesSkipped;
+    private final Map<String, QueryLatency> queries;
+    private final long rowsScanned;
+    private final long rowsMatched;
+    private final long storeBytes;
+    private final int loadedSegments;
+    private final int segments;
+
+    LogParserMetrics(Map<Path, FileIngestion> files, Map<RejectReason, Long> rejectedLines, long readErrors,
+                     long rotatedBytesSkipped, Map<String, QueryLatency> queries, long rowsScanned, long rowsMatched,
+                     long storeBytes, int loadedSegments, int segments) {
+        this.files = files;
+        this.rejectedLines = rejectedLines;
+        this.readErrors = readErrors;
+        this.rotatedBytesSkipped = rotatedBytesSkipped;
+        this.queries = queries;
+        this.rowsScanned = rowsScanned;
+        this.rowsMatched = rowsMatched;
+        this.storeBytes = storeBytes;
+        this.loadedSegments = loadedSegments;
+        this.segments = segments;
+    }
+
+    /**
+     * Every log file parsed so far, including the ones dropped by retention since. Files loaded
+     * from the snapshot are not parsed and only show up once lines are appended to them.
+     */
+    public Map<Path, FileIngestion> getFiles() {
+        return files;
+    }
+
+    /**
+     * Skipped lines of all files, by reason.
+     */
+    public Map<RejectReason, Long> getRejectedLines() {
+        return rejectedLines;
+    }
+
+    /**
+     * I/O errors while listing, reading or snapshotting the log files.
+     */
+    public long getReadErrors() {
+        return readErrors;
+    }
+
+    /**
+     * Bytes at the start of rotated log files that were not read, because they were read from the
+     * file before it was rotated; see {@link LogParser#refresh()}.
+     */
+    public long getRotatedBytesSkipped() {
+        return rotatedBytesSkipped;
+    }
+
+    /**
+     * Latencies by query method name, such as {@code getIPsForUser}, for the methods called so far.
+     */
+    public Map<String, QueryLatency> getQueries() {
+        return queries;
+    }
+
+    /**
+     * Candidate rows that scans looked at. Queries answered from rollups or sketches scan none.
+     */
+    public long getRowsScanned() {
+        return rowsScanned;
+    }
+
+    /**
+     * Scanned rows that matched their filter; far fewer than {@link #getRowsScanned()} means the
+     * indexes do not narrow those queries down.
+     */
+    public long getRowsMatched() {
+        return rowsMatched;
+    }
+
+    /**
+     * Estimated heap held by the loaded records, see {@link LogParserOptions#withMemoryBudget}.
+     */
+    public long getStoreBytes() {
+        return storeBytes;
+    }
+
+    public int getLoadedSegments() {
+        return loadedSegments;
+    }
+
+    public int getSegments() {
+        return segments;
+    }
+
+    @Override
+    public String toString() {
+        return "files=" + files + " rejected=" + rejectedLines + " readErrors=" + readErrors
+                + " rotatedBytesSkipped=" + rotatedBytesSkipped + " queries=" + queries
+                + " rowsScanned=" + rowsScanned + " rowsMatched=" + rowsMatched + " storeBytes=" + storeBytes
+                + " segments=" + loadedSegments + "/" + segments;
+    }
+
+    private static double perSecond(long amount, long nanos) {
+        return nanos == 0 ? 0 : amount * 1e9 / nanos;
+    }
+}
@@ -0,0 +1,38 @@
+package data;
+
+import java.util.Map;
+
+/**
+ * Management view of {@link LogParserMetrics}, registered by {@link LogParser#registerMetricsMBean()}.
+ * Every attribute is read from a fresh snapshot; maps are keyed by reason or query method name.
+ */
+public interface LogParserMetricsMXBean {
+    long getLinesIngested();
+
+    long getBytesIngested();
+
+    Map<String, Long> getRejectedLines();
+
+    long getReadErrors();
+
+    long getRotatedBytesSkipped();
+
+    /**
+     * Milliseconds since lines of any file were last read, or -1 before the first read.
+     */
+    long getMillisSinceLastRead();
+
+    Map<String, Long> getQueryCounts();
+
+    Map<String, Long> getQueryMeanNanos();
+
+    Map<String, Long> getQueryP99Nanos();
+
+    Map<String, Long> getQueryMaxNanos();
+
+    long getRowsScanned();
+
+    long getRowsMatched();
+
+    long getStoreBytes();
+}
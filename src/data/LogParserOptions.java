@@ -0,0 +1,207 @@
+package data;
+
+/**
+ * Tuning knobs for {@link LogParser}. Instances are immutable; every {@code with...} method returns
+ * a modified copy.
+ */
+public final class LogParserOptions {
+    private final int parallelism;
+    private final boolean snapshotEnabled;
+    private final boolean approximateDistinctCounts;
+    private final int queryParallelism;
+    private final int parallelQueryThreshold;
+    private final long memoryBudget;
+    private final int retentionDays;
+    private final int resultCacheSize;
+    private final MetricsListener metricsListener;
+    private final boolean offHeapStore;
+
+    private LogParserOptions(int parallelism, boolean snapshotEnabled, boolean approximateDistinctCounts,
+                             int queryParallelism, int parallelQueryThreshold, long memoryBudget, int retentionDays,
+                             int resultCacheSize, MetricsListener metricsListener, boolean offHeapStore) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        if (queryParallelism < 1) {
+            throw new IllegalArgumentException("queryParallelism must be positive: " + queryParallelism);
+        }
+        if (parallelQueryThreshold < 1) {
+            throw new IllegalArgumentException("parallelQueryThreshold must be positive: " + parallelQueryThreshold);
+        }
+        if (memoryBudget < 1) {
+            throw new IllegalArgumentException("memoryBudget must be positive: " + memoryBudget);
+        }
+        if (retentionDays < 0) {
+            throw new IllegalArgumentException("retentionDays must not be negative: " + retentionDays);
+        }
+        if (resultCacheSize < 0) {
+            throw new IllegalArgumentException("resultCacheSize must not be negative: " + resultCacheSize);
+        }
+        this.parallelism = parallelism;
+        this.snapshotEnabled = snapshotEnabled;
+        this.approximateDistinctCounts = approximateDistinctCounts;
+        this.queryParallelism = queryParallelism;
+        this.parallelQueryThreshold = parallelQueryThreshold;
+        this.memoryBudget = memoryBudget;
+        this.retentionDays = retentionDays;
+        this.resultCacheSize = resultCacheSize;
+        this.metricsListener = metricsListener;
+        this.offHeapStore = offHeapStore;
+    }
+
+    /**
+     * Sequential reading, no snapshot file, exact counts, serial queries, all records in memory and
+     * kept forever, no result cache, no metrics listener, records on the heap.
+     */
+    public static LogParserOptions defaults() {
+        return new LogParserOptions(1, false, false, 1, 1 << 16, Long.MAX_VALUE, 0, 0, null, false);
+    }
+
+    /**
+     * Number of threads used to read the log files; with more than one thread files are read
+     * concurrently. Files are always read in line-aligned chunks.
+     */
+    public LogParserOptions withParallelism(int parallelism) {
+        return new LogParserOptions(parallelism, snapshotEnabled, approximateDistinctCounts, queryParallelism,
+                parallelQueryThreshold, memoryBudget, retentionDays, resultCacheSize, metricsListener, offHeapStore);
+    }
+
+    /**
+     * Keeps the parsed records of every log file in a binary snapshot file inside the log
+     * directory. On the next start, files whose size and modification time are unchanged are
+     * loaded from the snapshot instead of being parsed again.
+     */
+    public LogParserOptions withSnapshot(boolean snapshotEnabled) {
+        return new LogParserOptions(parallelism, snapshotEnabled, approximateDistinctCounts, queryParallelism,
+                parallelQueryThreshold, memoryBudget, retentionDays, resultCacheSize, metricsListener, offHeapStore);
+    }
+
+    /**
+     * Answers {@code getNumberOfUniqueIPs} and {@code getNumberOfUsers} from HyperLogLog sketches
+     * kept per day of log records, with a standard error of about 0.8%, instead of collecting every
+     * distinct value. The sketches are built on the first such query. All other queries, including
+     * batches, stay exact.
+     */
+    public LogParserOptions withApproximateDistinctCounts(boolean approximateDistinctCounts) {
+        return new LogParserOptions(parallelism, snapshotEnabled, approximateDistinctCounts, queryParallelism,
+                parallelQueryThreshold, memoryBudget, retentionDays, resultCacheSize, metricsListener, offHeapStore);
+    }
+
+    /**
+     * Number of threads a single query may use. With more than one, queries that scan many records
+     * split them into partitions that run on a fork/join pool of this size, owned by the parser, and
+     * merge the partial results. Queries answered from indexes or rollups are not affected.
+     */
+    public LogParserOptions withQueryParallelism(int queryParallelism) {
+        return new LogParserOptions(parallelism, snapshotEnabled, approximateDistinctCounts, queryParallelism,
+                parallelQueryThreshold, memoryBudget, retentionDays, resultCacheSize, metricsListener, offHeapStore);
+    }
+
+    /**
+     * Number of candidate records of a log file from which a query scans it in parallel; smaller
+     * scans stay on the calling thread, where they finish sooner than tasks could be handed out.
+     * Only used with a {@link #withQueryParallelism query parallelism} above one. Defaults to 65536.
+     */
+    public LogParserOptions withParallelQueryThreshold(int parallelQueryThreshold) {
+        return new LogParserOptions(parallelism, snapshotEnabled, approximateDistinctCounts, queryParallelism,
+                parallelQueryThreshold, memoryBudget, retentionDays, resultCacheSize, metricsListener, offHeapStore);
+    }
+
+    /**
+     * Keeps the records of each log file in a segment of its own and holds the loaded segments to
+     * about this many bytes of heap. Segments are loaded when a query first needs one, from the
+     * snapshot if it is enabled and otherwise by parsing the file again, and the least recently used
+     * ones are dropped once the budget is exceeded. Lines appended while tailing stay loaded. Without
+     * a snapshot the files are still parsed once at start-up, to learn their date ranges.
+     */
+    public LogParserOptions withMemoryBudget(long memoryBudget) {
+        return new LogParserOptions(parallelism, snapshotEnabled, approximateDistinctCounts, queryParallelism,
+                parallelQueryThreshold, memoryBudget, retentionDays, resultCacheSize, metricsListener, offHeapStore);
+    }
+
+    /**
+     * Drops the records of log files whose newest record is more than {@code retentionDays} days
+     * old, at start-up and on every {@link LogParser#refresh() refresh}. 0 (the default) keeps
+     * everything.
+     */
+    public LogParserOptions withRetentionDays(int retentionDays) {
+        return new LogParserOptions(parallelism, snapshotEnabled, approximateDistinctCounts, queryParallelism,
+                parallelQueryThreshold, memoryBudget, retentionDays, resultCacheSize, metricsListener, offHeapStore);
+    }
+
+    /**
+     * Keeps the results of the last {@code resultCacheSize} distinct queries, so asking the same
+     * question again with the same arguments does not scan the records. Records ingested by
+     * {@link LogParser#refresh() refresh} or dropped by retention only invalidate the results whose
+     * date range they fall into. Set and batch queries, counts and first dates are cached; streams
+     * are not. 0 (the default) disables the cache.
+     */
+    public LogParserOptions withResultCache(int resultCacheSize) {
+        return new LogParserOptions(parallelism, snapshotEnabled, approximateDistinctCounts, queryParallelism,
+                parallelQueryThreshold, memoryBudget, retentionDays, resultCacheSize, metricsListener, offHeapStore);
+    }
+
+    /**
+     * Hands every measurement of the parser to {@code metricsListener} as it is taken, for export to
+     * a metrics registry. The parser keeps its totals regardless, see {@link LogParser#getMetrics()}
+     * and {@link LogParser#registerMetricsMBean()}. null (the default) removes the listener.
+     */
+    public LogParserOptions withMetricsListener(MetricsListener metricsListener) {
+        return new LogParserOptions(parallelism, snapshotEnabled, approximateDistinctCounts, queryParallelism,
+                parallelQueryThreshold, memoryBudget, retentionDays, resultCacheSize, metricsListener, offHeapStore);
+    }
+
+    /**
+     * Keeps the record columns and posting lists, which grow with the number of log lines, in
+     * native memory instead of on the heap; dictionaries, rollups and sketches stay on the heap.
+     * Records loaded from the {@link #withSnapshot snapshot} are read from a memory mapping of it,
+     * which processes opening the same log directory share. A {@link #withMemoryBudget memory
+     * budget} then counts the native bytes as well, and {@link LogParser#close()} releases them at
+     * once. Needs the incubating {@code jdk.incubator.foreign} module of JDK 17: run with
+     * {@code --add-modules jdk.incubator.foreign}, or the parser fails to start.
+     */
+    public LogParserOptions withOffHeapStore(boolean offHeapStore) {
+        return new LogParserOptions(parallelism, snapshotEnabled, approximateDistinctCounts, queryParallelism,
+                parallelQueryThreshold, memoryBudget, retentionDays, resultCacheSize, metricsListener, offHeapStore);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public boolean isSnapshotEnabled() {
+        return snapshotEnabled;
+    }
+
+    public boolean isApproximateDistinctCounts() {
+        return approximateDistinctCounts;
+    }
+
+    public int getQueryParallelism() {
+        return queryParallelism;
+    }
+
+    public int getParallelQueryThreshold() {
+        return parallelQueryThreshold;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public int getRetentionDays() {
+        return retentionDays;
+    }
+
+    public int getResultCacheSize() {
+        return resultCacheSize;
+    }
+
+    public MetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    public boolean isOffHeapStore() {
+        return offHeapStore;
+    }
+}
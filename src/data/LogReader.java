@@ -0,0 +1,349 @@
+package data;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * Reads byte ranges of log files into a sealed {@link LogStore}. Ranges are split into
+ * line-aligned chunks; with a parallelism above one the chunks are tokenized concurrently on a
+ * pool kept for the life of the reader, each into its own partial store, and the parts are merged
+ * in range order. Small reads stay on the calling thread. Compressed files are always read from
+ * their start, less {@link Range#skip}, as chunks handed out by {@link DecompressedChunks}. Lines,
+ * rejected lines, bytes and tokenizing time of every range go to a {@link MetricsRecorder}.
+ */
+final class LogReader {
+    private static final long CHUNK_SIZE = 64L * 1024 * 1024;
+    private static final int MAX_FIRST_LINE = 4096;
+    /**
+     * Plain ranges below this many bytes in total, such as the lines appended between two
+     * refreshes, are read on the calling thread.
+     */
+    private static final long SERIAL_READ_BYTES = 1024 * 1024;
+
+    private final MetricsRecorder metrics;
+    // Shared by all reads of the parser and kept until close(); null with a parallelism of one.
+    private final ExecutorService executor;
+
+    LogReader(int parallelism, MetricsRecorder metrics) {
+        this.metrics = metrics;
+        if (parallelism > 1) {
+            AtomicInteger threads = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+                Thread thread = new Thread(runnable, "log-reader-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            executor = null;
+        }
+    }
+
+    /**
+     * Stops the worker threads; reads in progress end with their remaining chunks unread.
+     */
+    void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    static final class Range {
+        final Path file;
+        final long start;
+        final long end;
+        /**
+         * Decompressed bytes at the start of a compressed file that were already read from the
+         * file it was rotated from; {@code start} and {@code end} of a compressed file always span
+         * all of it.
+         */
+        final long skip;
+
+        Range(Path file, long start, long end) {
+            this(file, start, end, 0);
+        }
+
+        Range(Path file, long start, long end, long skip) {
+            this.file = file;
+            this.start = start;
+            this.end = end;
+            this.skip = skip;
+        }
+    }
+
+    /**
+     * Returns the sealed store of all records in {@code ranges}. An {@code IOException} is
+     * reported and the records read up to that point are kept, as the original reader did.
+     */
+    LogStore read(List<Range> ranges) {
+        LogStore store = new LogStore();
+        for (LogStore part : readParts(ranges)) {
+            store.addAll(part);
+        }
+        store.seal();
+        return store;
+    }
+
+    /**
+     * Returns one sealed store per range, in range order.
+     */
+    List<LogStore> readEach(List<Range> ranges) {
+        List<LogStore> stores = readParts(ranges);
+        for (LogStore store : stores) {
+            store.seal();
+        }
+        return stores;
+    }
+
+    /**
+     * Reads every range into its own unsealed store. Chunks of all ranges share the worker pool,
+     * so many small files are read as concurrently as one large file.
+     */
+    private List<LogStore> readParts(List<Range> ranges) {
+        List<LogStore> stores = new ArrayList<>();
+        List<List<Future<LogStore>>> parts = new ArrayList<>();
+        List<MetricsRecorder.RangeRead> reads = new ArrayList<>();
+        for (Range range : ranges) {
+            stores.add(new LogStore());
+            parts.add(new ArrayList<>());
+            reads.add(metrics.startRead(range.file, range.end - range.start));
+        }
+        ExecutorService executor = isSmall(ranges) ? null : this.executor;
+        Path file = null;
+        try {
+            for (int i = 0; i < ranges.size(); i++) {
+                Range range = ranges.get(i);
+                MetricsRecorder.RangeRead read = reads.get(i);
+                file = range.file;
+                if (DecompressedChunks.isCompressed(range.file)) {
+                    readCompressed(range.file, range.skip, executor, stores.get(i), parts.get(i), read);
+                    continue;
+                }
+                for (long[] chunk : splitIntoChunks(range)) {
+                    if (executor == null) {
+                        readChunk(range.file, chunk[0], chunk[1], stores.get(i), read);
+                    } else {
+                        parts.get(i).add(executor.submit(() -> readChunk(range.file, chunk[0], chunk[1], new LogStore(), read)));
+                    }
+                }
+            }
+            // Parts are merged in submission order, so the result is identical to the sequential read.
+            for (int i = 0; i < ranges.size(); i++) {
+                file = ranges.get(i).file;
+                for (Future<LogStore> part : parts.get(i)) {
+                    stores.get(i).addAll(part.get());
+                }
+                reads.get(i).finish();
+            }
+        } catch (IOException e) {
+            metrics.readFailed(file, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                metrics.readFailed(file, (IOException) e.getCause());
+            } else {
+                throw new IllegalStateException("Failed to read logs", e.getCause());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Chunks still queued after a failure would only be thrown away.
+            for (List<Future<LogStore>> rangeParts : parts) {
+                for (Future<LogStore> part : rangeParts) {
+                    part.cancel(true);
+                }
+            }
+        }
+        return stores;
+    }
+
+    private static boolean isSmall(List<Range> ranges) {
+        long bytes = 0;
+        for (Range range : ranges) {
+            if (DecompressedChunks.isCompressed(range.file)) {
+                return false;
+            }
+            bytes += range.end - range.start;
+        }
+        return bytes < SERIAL_READ_BYTES;
+    }
+
+    /**
+     * Tokenizes the chunks of a compressed file while the following ones are decompressed; with a
+     * worker pool, chunks are tokenized concurrently like those of a plain file. An
+     * {@code IOException}, such as a truncated stream, is reported and ends this file only.
+     */
+    private void readCompressed(Path file, long skip, ExecutorService executor, LogStore store,
+                                List<Future<LogStore>> parts, MetricsRecorder.RangeRead read) {
+        LogLineTokenizer tokenizer = new LogLineTokenizer();
+        long nanos = 0;
+        try (DecompressedChunks chunks = new DecompressedChunks(file, skip)) {
+            for (ByteBuffer chunk = chunks.next(); chunk != null; chunk = chunks.next()) {
+                if (executor == null) {
+                    long start = System.nanoTime();
+                    tokenizer.tokenize(chunk, 0, chunk.limit(), store::add);
+                    nanos += System.nanoTime() - start;
+                } else {
+                    ByteBuffer part = chunk;
+                    parts.add(executor.submit(() -> tokenize(part, new LogStore(), read)));
+                }
+            }
+        } catch (IOException e) {
+            metrics.readFailed(file, e);
+        }
+        if (executor == null) {
+            read.add(tokenizer, nanos);
+        }
+    }
+
+    private List<long[]> splitIntoChunks(Range range) throws IOException {
+        List<long[]> chunks = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(range.file, StandardOpenOption.READ)) {
+            long start = range.start;
+            while (start < range.end) {
+                long end = start + CHUNK_SIZE >= range.end ? range.end : nextLineStart(channel, start + CHUNK_SIZE, range.end);
+                chunks.add(new long[]{start, end});
+                start = end;
+            }
+        }
+        return chunks;
+    }
+
+    private long nextLineStart(FileChannel channel, long position, long limit) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        while (position < limit) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read && position + i < limit; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return limit;
+    }
+
+    /**
+     * The first line of {@code file}, decompressed if it is compressed, or null if the file does
+     * not have a complete line within its first {@value #MAX_FIRST_LINE} bytes.
+     */
+    static String firstLine(Path file) throws IOException {
+        try (InputStream in = open(file)) {
+            byte[] head = in.readNBytes(MAX_FIRST_LINE);
+            for (int i = 0; i < head.length; i++) {
+                if (head[i] == '\n' || head[i] == '\r') {
+                    return new String(head, 0, i, StandardCharsets.UTF_8);
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * CRC-32 of the bytes {@code [from, to)} of {@code file}, decompressed if it is compressed, or
+     * -1 if the file, or the part of a compressed file written so far, ends before {@code to}.
+     */
+    static long checksum(Path file, long from, long to) throws IOException {
+        try (InputStream in = open(file)) {
+            in.skipNBytes(from);
+            byte[] bytes = in.readNBytes((int) (to - from));
+            if (bytes.length < to - from) {
+                return -1;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            return crc.getValue();
+        } catch (EOFException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * True if all of {@code file} that can be read so far, decompressed if it is compressed, is a
+     * proper prefix of the plain file {@code source}: a copy of {@code source} still being written.
+     */
+    static boolean isPartialCopy(Path file, Path source) throws IOException {
+        try (InputStream copy = new BufferedInputStream(open(file));
+             InputStream original = new BufferedInputStream(Files.newInputStream(source))) {
+            while (true) {
+                int b;
+                try {
+                    b = copy.read();
+                } catch (EOFException e) {
+                    b = -1;
+                }
+                int expected = original.read();
+                if (b < 0) {
+                    return expected >= 0;
+                }
+                if (b != expected) {
+                    return false;
+                }
+            }
+        }
+    }
+
+    private static InputStream open(Path file) throws IOException {
+        return DecompressedChunks.isCompressed(file) ? DecompressedChunks.open(file) : Files.newInputStream(file);
+    }
+
+    /**
+     * Returns the position just past the last line terminator in {@code [start, end)} of the file,
+     * or {@code start} if the range holds no complete line.
+     */
+    static long lastLineEnd(Path file, long start, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = end;
+            while (position > start) {
+                int length = (int) Math.min(buffer.capacity(), position - start);
+                buffer.clear().limit(length);
+                while (buffer.hasRemaining() && channel.read(buffer, position - length + buffer.position()) > 0) {
+                }
+                for (int i = buffer.position() - 1; i >= 0; i--) {
+                    byte b = buffer.get(i);
+                    if (b == '\n' || b == '\r') {
+                        return position - length + i + 1;
+                    }
+                }
+                position -= length;
+            }
+        }
+        return start;
+    }
+
+    private LogStore readChunk(Path file, long start, long end, LogStore part, MetricsRecorder.RangeRead read) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        }
+        return tokenize(buffer, part, read);
+    }
+
+    private static LogStore tokenize(ByteBuffer buffer, LogStore part, MetricsRecorder.RangeRead read) {
+        long start = System.nanoTime();
+        LogLineTokenizer tokenizer = new LogLineTokenizer();
+        tokenizer.tokenize(buffer, 0, buffer.limit(), part::add);
+        read.add(tokenizer, System.nanoTime() - start);
+        return part;
+    }
+}
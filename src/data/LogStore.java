@@ -0,0 +1,828 @@
+package data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+/**
+ * Column-oriented record store: one primitive array per field, with IPs and users stored as
+ * {@link StringDictionary} ids and events and statuses as enum ordinals. Tasks are {@code -1} for
+ * events that carry no task number.
+ * <p>
+ * Once {@link #seal()} has been called the rows are ordered by date and posting lists exist for
+ * every user, IP, event, status and solved/done task. A scan binary-searches the filter's date
+ * range and then walks either that slice of rows or the shortest matching posting list within it.
+ * <p>
+ * Rows are added to heap arrays, which the column views read. A sealed store can move its columns
+ * and posting lists into {@link NativeMemory} ({@link #moveOffHeap}) or be read from the snapshot
+ * with them left in a mapping of the file; either way it holds only per-value and aggregated data
+ * on the heap afterwards.
+ */
+final class LogStore {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final Event[] EVENTS = Event.values();
+    private static final Status[] STATUSES = Status.values();
+
+    private final StringDictionary ips;
+    private final StringDictionary users;
+    private long[] dateArray = new long[INITIAL_CAPACITY];
+    private int[] ipArray = new int[INITIAL_CAPACITY];
+    private int[] userArray = new int[INITIAL_CAPACITY];
+    private byte[] eventArray = new byte[INITIAL_CAPACITY];
+    private byte[] statusArray = new byte[INITIAL_CAPACITY];
+    private int[] taskArray = new int[INITIAL_CAPACITY];
+    private LongColumn dates;
+    private IntColumn ipIds;
+    private IntColumn userIds;
+    private ByteColumn events;
+    private ByteColumn statuses;
+    private IntColumn tasks;
+    private NativeMemory memory;
+    private int size;
+    private boolean sorted = true;
+    private boolean sealed;
+    private PostingIndex ipIndex;
+    private PostingIndex userIndex;
+    private PostingIndex eventIndex;
+    private PostingIndex statusIndex;
+    private PostingIndex taskIndex;
+    private final Map<Long, Integer> taskKeys = new HashMap<>();
+    private Rollup rollup;
+    private GlobalDictionary globalIpDictionary;
+    private int[] globalIps;
+    private int[] globalUsers;
+    private volatile DistinctSketch ipSketch;
+    private volatile DistinctSketch userSketch;
+    private volatile TaskTimeline taskTimeline;
+    private volatile HeavyHitterSketch ipHitters;
+    private volatile HeavyHitterSketch userHitters;
+
+    LogStore() {
+        this(new StringDictionary(), new StringDictionary());
+    }
+
+    private LogStore(StringDictionary ips, StringDictionary users) {
+        this.ips = ips;
+        this.users = users;
+        wrapArrays();
+    }
+
+    /**
+     * Points the columns at the arrays rows are added to, after they were replaced.
+     */
+    private void wrapArrays() {
+        dates = LongColumn.of(dateArray);
+        ipIds = IntColumn.of(ipArray);
+        userIds = IntColumn.of(userArray);
+        events = ByteColumn.of(eventArray);
+        statuses = ByteColumn.of(statusArray);
+        tasks = IntColumn.of(taskArray);
+    }
+
+    void add(String ip, String user, long date, Event event, int task, Status status) {
+        addRow(ips.add(ip), users.add(user), date, (byte) event.ordinal(), task, (byte) status.ordinal());
+    }
+
+    /**
+     * Appends all rows of {@code other}, translating its dictionary ids into this store's ids.
+     */
+    void addAll(LogStore other) {
+        addAll(other, 0, other.size);
+    }
+
+    /**
+     * Appends the rows {@code [from, to)} of {@code other}, translating its dictionary ids into this
+     * store's ids.
+     */
+    void addAll(LogStore other, int from, int to) {
+        int[] ipMapping = mapping(other.ips, ips);
+        int[] userMapping = mapping(other.users, users);
+        ensureCapacity(size + to - from);
+        for (int row = from; row < to; row++) {
+            addRow(ipMapping[other.ipIds.get(row)], userMapping[other.userIds.get(row)], other.dates.get(row),
+                    other.events.get(row), other.tasks.get(row), other.statuses.get(row));
+        }
+    }
+
+    private static int[] mapping(StringDictionary from, StringDictionary to) {
+        int[] mapping = new int[from.size()];
+        for (int id = 0; id < mapping.length; id++) {
+            mapping[id] = to.add(from.valueOf(id));
+        }
+        return mapping;
+    }
+
+    private void addRow(int ip, int user, long date, byte event, int task, byte status) {
+        if (sealed) {
+            throw new IllegalStateException("Store is sealed");
+        }
+        ensureCapacity(size + 1);
+        ipArray[size] = ip;
+        userArray[size] = user;
+        dateArray[size] = date;
+        eventArray[size] = event;
+        taskArray[size] = task;
+        statusArray[size] = status;
+        sorted = sorted && (size == 0 || dateArray[size - 1] <= date);
+        size++;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= dateArray.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, dateArray.length * 2);
+        dateArray = Arrays.copyOf(dateArray, newCapacity);
+        ipArray = Arrays.copyOf(ipArray, newCapacity);
+        userArray = Arrays.copyOf(userArray, newCapacity);
+        eventArray = Arrays.copyOf(eventArray, newCapacity);
+        taskArray = Arrays.copyOf(taskArray, newCapacity);
+        statusArray = Arrays.copyOf(statusArray, newCapacity);
+        wrapArrays();
+    }
+
+    /**
+     * Sorts the rows by date and builds the posting lists and the {@link Rollup}. No rows can be
+     * added afterwards.
+     */
+    void seal() {
+        if (sealed) {
+            return;
+        }
+        sortByDate();
+        ipIndex = new PostingIndex(ipArray, size, ips.size());
+        userIndex = new PostingIndex(userArray, size, users.size());
+        eventIndex = new PostingIndex(eventArray, size, EVENTS.length);
+        statusIndex = new PostingIndex(statusArray, size, STATUSES.length);
+        int[] taskKeyColumn = new int[size];
+        for (int row = 0; row < size; row++) {
+            byte event = eventArray[row];
+            taskKeyColumn[row] = event == Event.SOLVE_TASK.ordinal() || event == Event.DONE_TASK.ordinal()
+                    ? taskKeys.computeIfAbsent(taskKey(event, taskArray[row]), key -> taskKeys.size())
+                    : -1;
+        }
+        taskIndex = new PostingIndex(taskKeyColumn, size, taskKeys.size());
+        rollup = new Rollup(dateArray, eventArray, statusArray, taskArray, size);
+        sealed = true;
+    }
+
+    /**
+     * True once the rows are ordered by date.
+     */
+    boolean isSealed() {
+        return sealed;
+    }
+
+    /**
+     * Copies the columns and posting lists of a sealed store into {@code memory}, which the store
+     * owns from then on, see {@link #close()}. Their heap arrays are dropped, so the store must not
+     * be in use yet.
+     */
+    void moveOffHeap(NativeMemory memory) {
+        if (!sealed) {
+            throw new IllegalStateException("Only sealed stores can be moved off the heap");
+        }
+        dates = memory.copy(dates.array(), size);
+        ipIds = memory.copy(ipIds.array(), size);
+        userIds = memory.copy(userIds.array(), size);
+        events = memory.copy(events.array(), size);
+        statuses = memory.copy(statuses.array(), size);
+        tasks = memory.copy(tasks.array(), size);
+        ipIndex = ipIndex.copyTo(memory);
+        userIndex = userIndex.copyTo(memory);
+        eventIndex = eventIndex.copyTo(memory);
+        statusIndex = statusIndex.copyTo(memory);
+        taskIndex = taskIndex.copyTo(memory);
+        rollup = rollup.withColumns(events, statuses, tasks);
+        dropArrays();
+        this.memory = memory;
+    }
+
+    private void dropArrays() {
+        dateArray = null;
+        ipArray = null;
+        userArray = null;
+        eventArray = null;
+        statusArray = null;
+        taskArray = null;
+    }
+
+    /**
+     * True if the columns and posting lists are in native memory.
+     */
+    boolean isOffHeap() {
+        return memory != null;
+    }
+
+    /**
+     * Native memory held by an off-heap store, or 0.
+     */
+    long offHeapBytes() {
+        return memory == null ? 0 : memory.bytes();
+    }
+
+    /**
+     * Releases the native memory of an off-heap store at once; reading the store afterwards throws
+     * {@link IllegalStateException}. A heap store is left to the garbage collector.
+     */
+    void close() {
+        if (memory != null) {
+            memory.close();
+        }
+    }
+
+    /**
+     * Maps the dictionary ids of this store to ids of the dictionaries shared by all stores. Only
+     * attached stores can answer subnet filters and {@link #globalIp}/{@link #globalUser}.
+     */
+    void attach(GlobalDictionary ips, GlobalDictionary users) {
+        globalIps = ips.map(this.ips);
+        globalUsers = users.map(this.users);
+        globalIpDictionary = ips;
+    }
+
+    private static long taskKey(int event, int task) {
+        return (long) event << 32 | (task & 0xffffffffL);
+    }
+
+    /**
+     * Reorders all rows by date. Rows with equal dates keep their relative order.
+     */
+    private void sortByDate() {
+        if (sorted) {
+            return;
+        }
+        int[] order = new int[size];
+        for (int row = 0; row < size; row++) {
+            order[row] = row;
+        }
+        mergeSort(order, new int[size], 0, size);
+        dateArray = reorder(dateArray, order);
+        ipArray = reorder(ipArray, order);
+        userArray = reorder(userArray, order);
+        eventArray = reorder(eventArray, order);
+        taskArray = reorder(taskArray, order);
+        statusArray = reorder(statusArray, order);
+        wrapArrays();
+        sorted = true;
+    }
+
+    private void mergeSort(int[] order, int[] buffer, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(order, buffer, from, middle);
+        mergeSort(order, buffer, middle, to);
+        if (dateArray[order[middle - 1]] <= dateArray[order[middle]]) {
+            return;
+        }
+        System.arraycopy(order, from, buffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && dateArray[buffer[left]] <= dateArray[buffer[right]])) {
+                order[i] = buffer[left++];
+            } else {
+                order[i] = buffer[right++];
+            }
+        }
+    }
+
+    private static long[] reorder(long[] column, int[] order) {
+        long[] result = new long[order.length];
+        for (int i = 0; i < order.length; i++) {
+            result[i] = column[order[i]];
+        }
+        return result;
+    }
+
+    private static int[] reorder(int[] column, int[] order) {
+        int[] result = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            result[i] = column[order[i]];
+        }
+        return result;
+    }
+
+    private static byte[] reorder(byte[] column, int[] order) {
+        byte[] result = new byte[order.length];
+        for (int i = 0; i < order.length; i++) {
+            result[i] = column[order[i]];
+        }
+        return result;
+    }
+
+    /**
+     * Reports the rows that match {@code filter} to {@code action} in groups of equal event, status
+     * and task, using the {@link Rollup}; a group can be reported more than once. Returns false
+     * without reporting anything if the rollup cannot answer the filter: it names an IP, user or
+     * subnet, or the store is too sparse to have rollup levels.
+     */
+    boolean rollUp(RowFilter filter, Rollup.GroupConsumer action) {
+        if (!sealed || filter.ip != null || filter.user != null || filter.subnet != null || !rollup.hasLevels()) {
+            return false;
+        }
+        if (filter.event != RowFilter.NONE && filter.status != RowFilter.NONE) {
+            rollup.forEach(lowerBound(filter.after), upperBound(filter.before), filter, action);
+        }
+        return true;
+    }
+
+    /**
+     * Adds the IPs of the rows dated within {@code [after, before]} to {@code target}. The sketches
+     * behind this are built on first use; requires a sealed store.
+     */
+    void addDistinctIPs(long after, long before, HyperLogLog target) {
+        DistinctSketch sketch = ipSketch;
+        if (sketch == null) {
+            synchronized (this) {
+                if (ipSketch == null) {
+                    ipSketch = new DistinctSketch(dates, ipIds, ips, size);
+                }
+                sketch = ipSketch;
+            }
+        }
+        sketch.addTo(lowerBound(after), upperBound(before), target);
+    }
+
+    /**
+     * Adds the users of the rows dated within {@code [after, before]} to {@code target}, see
+     * {@link #addDistinctIPs}.
+     */
+    void addDistinctUsers(long after, long before, HyperLogLog target) {
+        DistinctSketch sketch = userSketch;
+        if (sketch == null) {
+            synchronized (this) {
+                if (userSketch == null) {
+                    userSketch = new DistinctSketch(dates, userIds, users, size);
+                }
+                sketch = userSketch;
+            }
+        }
+        sketch.addTo(lowerBound(after), upperBound(before), target);
+    }
+
+    /**
+     * Adds the IPs of the rows dated within {@code [after, before]} that match the event and status
+     * of {@code filter} to {@code target}, by shared id. The sketches behind this are built on first
+     * use with {@code capacity} counters; requires a sealed, attached store.
+     */
+    void addTopIPs(RowFilter filter, int capacity, FrequentItems target) {
+        HeavyHitterSketch sketch = ipHitters;
+        if (sketch == null) {
+            synchronized (this) {
+                if (ipHitters == null) {
+                    ipHitters = new HeavyHitterSketch(dates, ipIds, events, statuses, size, capacity);
+                }
+                sketch = ipHitters;
+            }
+        }
+        sketch.addTo(lowerBound(filter.after), upperBound(filter.before), filter, globalIps, target);
+    }
+
+    /**
+     * Adds the users of the matching rows to {@code target}, see {@link #addTopIPs}.
+     */
+    void addTopUsers(RowFilter filter, int capacity, FrequentItems target) {
+        HeavyHitterSketch sketch = userHitters;
+        if (sketch == null) {
+            synchronized (this) {
+                if (userHitters == null) {
+                    userHitters = new HeavyHitterSketch(dates, userIds, events, statuses, size, capacity);
+                }
+                sketch = userHitters;
+            }
+        }
+        sketch.addTo(lowerBound(filter.after), upperBound(filter.before), filter, globalUsers, target);
+    }
+
+    /**
+     * Returns the task and login dates of this store, built on first use; requires a sealed store.
+     */
+    TaskTimeline taskTimeline() {
+        TaskTimeline timeline = taskTimeline;
+        if (timeline == null) {
+            synchronized (this) {
+                if (taskTimeline == null) {
+                    taskTimeline = new TaskTimeline(dates, userIds, events, tasks, size, users.size());
+                }
+                timeline = taskTimeline;
+            }
+        }
+        return timeline;
+    }
+
+    /**
+     * Passes the dates of the rows of {@code user}, a local id, within {@code [after, before]} to
+     * {@code action} in date order; requires a sealed store.
+     */
+    void forEachUserDate(int user, long after, long before, LongConsumer action) {
+        IntColumn rows = userIndex.rows();
+        int end = userIndex.position(user, upperBound(before));
+        for (int i = userIndex.position(user, lowerBound(after)); i < end; i++) {
+            action.accept(dates.get(rows.get(i)));
+        }
+    }
+
+    /**
+     * Returns a cursor over the rows that match {@code filter}. On a sealed store it walks the date
+     * range of the filter, or the shortest matching posting list within it.
+     */
+    Cursor cursor(RowFilter filter) {
+        int ip = idOf(ips, filter.ip);
+        int user = idOf(users, filter.user);
+        BitSet subnetIps = subnetIps(filter);
+        if (ip == RowFilter.NONE || user == RowFilter.NONE || filter.event == RowFilter.NONE || filter.status == RowFilter.NONE
+                || subnetIps != null && subnetIps.isEmpty()) {
+            return new Cursor(ip, user, subnetIps, filter, null, 0, 0);
+        }
+        if (!sealed) {
+            return new Cursor(ip, user, subnetIps, filter, null, 0, size);
+        }
+        int from = lowerBound(filter.after);
+        int to = upperBound(filter.before);
+
+        PostingIndex index = null;
+        int key = 0;
+        int length = to - from;
+        if (user != RowFilter.ANY && postings(userIndex, user, from, to) < length) {
+            index = userIndex;
+            key = user;
+            length = postings(index, key, from, to);
+        }
+        if (ip != RowFilter.ANY && postings(ipIndex, ip, from, to) < length) {
+            index = ipIndex;
+            key = ip;
+            length = postings(index, key, from, to);
+        }
+        if (filter.event != RowFilter.ANY && !filter.anyTask) {
+            Integer taskKey = taskKeys.get(taskKey(filter.event, filter.task));
+            int candidate = taskKey == null ? RowFilter.NONE : taskKey;
+            if (postings(taskIndex, candidate, from, to) < length) {
+                index = taskIndex;
+                key = candidate;
+                length = postings(index, key, from, to);
+            }
+        }
+        if (filter.event != RowFilter.ANY && postings(eventIndex, filter.event, from, to) < length) {
+            index = eventIndex;
+            key = filter.event;
+            length = postings(index, key, from, to);
+        }
+        if (filter.status != RowFilter.ANY && postings(statusIndex, filter.status, from, to) < length) {
+            index = statusIndex;
+            key = filter.status;
+            length = postings(index, key, from, to);
+        }
+        if (subnetIps != null) {
+            int subnetLength = 0;
+            for (int id = subnetIps.nextSetBit(0); id >= 0 && subnetLength < length; id = subnetIps.nextSetBit(id + 1)) {
+                subnetLength += postings(ipIndex, id, from, to);
+            }
+            if (subnetLength < length) {
+                return new Cursor(ip, user, subnetIps, filter, IntColumn.of(subnetRows(subnetIps, from, to, subnetLength)), 0,
+                        subnetLength);
+            }
+        }
+
+        if (index == null) {
+            return new Cursor(ip, user, subnetIps, filter, null, from, to);
+        }
+        return new Cursor(ip, user, subnetIps, filter, index.rows(), index.position(key, from), index.position(key, to));
+    }
+
+    /**
+     * Local ids of the IPs in the subnet of {@code filter}, or null if it has none.
+     */
+    private BitSet subnetIps(RowFilter filter) {
+        if (filter.subnet == null) {
+            return null;
+        }
+        if (globalIps == null) {
+            throw new IllegalStateException("Subnet filters need an attached store");
+        }
+        BitSet result = new BitSet(globalIps.length);
+        for (int id = 0; id < globalIps.length; id++) {
+            if (globalIpDictionary.isInSubnet(globalIps[id], filter.subnet)) {
+                result.set(id);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Rows in {@code [from, to)} of all IPs in {@code subnetIps}, merged from their posting lists.
+     */
+    private int[] subnetRows(BitSet subnetIps, int from, int to, int count) {
+        int[] result = new int[count];
+        int length = 0;
+        IntColumn rows = ipIndex.rows();
+        for (int id = subnetIps.nextSetBit(0); id >= 0; id = subnetIps.nextSetBit(id + 1)) {
+            int end = ipIndex.position(id, to);
+            for (int i = ipIndex.position(id, from); i < end; i++) {
+                result[length++] = rows.get(i);
+            }
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Pull-style scan that hands out the rows matching a filter one at a time, in row order.
+     */
+    final class Cursor {
+        private final int ip;
+        private final int user;
+        private final BitSet subnetIps;
+        private final RowFilter filter;
+        private final IntColumn rows;
+        private int position;
+        private int end;
+
+        /**
+         * Walks {@code rows[position..end)}, or the rows {@code position..end} themselves if
+         * {@code rows} is null.
+         */
+        private Cursor(int ip, int user, BitSet subnetIps, RowFilter filter, IntColumn rows, int position, int end) {
+            this.ip = ip;
+            this.user = user;
+            this.subnetIps = subnetIps;
+            this.filter = filter;
+            this.rows = rows;
+            this.position = position;
+            this.end = end;
+        }
+
+        /**
+         * Number of candidate rows left; the matching ones are among them.
+         */
+        int remaining() {
+            return end - position;
+        }
+
+        /**
+         * Hands the second half of the remaining candidates to a new cursor, or returns null if
+         * fewer than two are left. Both halves keep row order.
+         */
+        Cursor trySplit() {
+            if (end - position < 2) {
+                return null;
+            }
+            int middle = (position + end) >>> 1;
+            Cursor split = new Cursor(ip, user, subnetIps, filter, rows, middle, end);
+            end = middle;
+            return split;
+        }
+
+        /**
+         * Returns the next matching row, or {@code -1} once there are no more.
+         */
+        int next() {
+            while (position < end) {
+                int row = rows == null ? position++ : rows.get(position++);
+                if (matches(row, ip, user, subnetIps, filter)
+                        && (sealed || dates.get(row) >= filter.after && dates.get(row) <= filter.before)) {
+                    return row;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Returns a block matcher for the equality conditions of {@code filter}, ignoring its date
+     * range, or null if no row of this store can match.
+     */
+    Match match(RowFilter filter) {
+        int ip = idOf(ips, filter.ip);
+        int user = idOf(users, filter.user);
+        BitSet subnetIps = subnetIps(filter);
+        if (ip == RowFilter.NONE || user == RowFilter.NONE || filter.event == RowFilter.NONE || filter.status == RowFilter.NONE
+                || subnetIps != null && subnetIps.isEmpty()) {
+            return null;
+        }
+        return new Match(ip, user, subnetIps, filter);
+    }
+
+    /**
+     * Matches blocks of rows with the {@link ScanKernel}, straight on the arrays of a heap store;
+     * subnets are tested per matching row.
+     */
+    final class Match {
+        private final ScanKernel kernel = ScanKernel.get();
+        private final byte[] heapEvents = events.array();
+        private final byte[] heapStatuses = statuses.array();
+        private final int[] heapTasks = tasks.array();
+        private final int[] heapIps = ipIds.array();
+        private final int[] heapUsers = userIds.array();
+        private final boolean heap = heapEvents != null;
+        private final int ip;
+        private final int user;
+        private final BitSet subnetIps;
+        private final RowFilter filter;
+
+        private Match(int ip, int user, BitSet subnetIps, RowFilter filter) {
+            this.ip = ip;
+            this.user = user;
+            this.subnetIps = subnetIps;
+            this.filter = filter;
+        }
+
+        /**
+         * Returns the matches among rows {@code [from, to)} as a bitmask, see {@link ScanKernel#match}.
+         */
+        long word(int from, int to) {
+            long word = heap ? kernel.match(heapEvents, heapStatuses, heapTasks, heapIps, heapUsers, from, to,
+                    filter.event, filter.status, filter.anyTask, filter.task, ip, user)
+                    : kernel.match(events, statuses, tasks, ipIds, userIds, from, to, filter.event, filter.status,
+                    filter.anyTask, filter.task, ip, user);
+            if (subnetIps != null) {
+                for (long bits = word; bits != 0; bits &= bits - 1) {
+                    int bit = Long.numberOfTrailingZeros(bits);
+                    if (!subnetIps.get(ipIds.get(from + bit))) {
+                        word &= ~(1L << bit);
+                    }
+                }
+            }
+            return word;
+        }
+    }
+
+    private static int idOf(StringDictionary dictionary, String value) {
+        if (value == null) {
+            return RowFilter.ANY;
+        }
+        int id = dictionary.idOf(value);
+        return id == StringDictionary.NOT_FOUND ? RowFilter.NONE : id;
+    }
+
+    private static int postings(PostingIndex index, int key, int from, int to) {
+        return index.position(key, to) - index.position(key, from);
+    }
+
+    private boolean matches(int row, int ip, int user, BitSet subnetIps, RowFilter filter) {
+        return (ip == RowFilter.ANY || ipIds.get(row) == ip) &&
+                (user == RowFilter.ANY || userIds.get(row) == user) &&
+                (subnetIps == null || subnetIps.get(ipIds.get(row))) &&
+                (filter.event == RowFilter.ANY || events.get(row) == filter.event) &&
+                (filter.status == RowFilter.ANY || statuses.get(row) == filter.status) &&
+                filter.matchesTask(tasks.get(row));
+    }
+
+    /**
+     * Index of the first row dated at or after {@code date}; requires sorted rows.
+     */
+    int lowerBound(long date) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (dates.get(middle) < date) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Index of the first row dated after {@code date}; requires sorted rows.
+     */
+    int upperBound(long date) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (dates.get(middle) <= date) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    int size() {
+        return size;
+    }
+
+    StringDictionary ips() {
+        return ips;
+    }
+
+    StringDictionary users() {
+        return users;
+    }
+
+    long date(int row) {
+        return dates.get(row);
+    }
+
+    int ip(int row) {
+        return ipIds.get(row);
+    }
+
+    int user(int row) {
+        return userIds.get(row);
+    }
+
+    int globalIp(int row) {
+        return globalIps[ipIds.get(row)];
+    }
+
+    int globalUser(int row) {
+        return globalUsers[userIds.get(row)];
+    }
+
+    /**
+     * Shared dictionary ids of this store's users, indexed by local id.
+     */
+    int[] globalUsers() {
+        return globalUsers;
+    }
+
+    Event event(int row) {
+        return EVENTS[events.get(row)];
+    }
+
+    Status status(int row) {
+        return STATUSES[statuses.get(row)];
+    }
+
+    int task(int row) {
+        return tasks.get(row);
+    }
+
+    /**
+     * Writes a sealed store in the {@link SnapshotFile} block format.
+     */
+    void writeTo(SnapshotFile.Output out) throws IOException {
+        if (!sealed) {
+            throw new IllegalStateException("Only sealed stores can be written");
+        }
+        ips.writeTo(out);
+        users.writeTo(out);
+        dates.writeTo(out, size);
+        ipIds.writeTo(out, size);
+        userIds.writeTo(out, size);
+        events.writeTo(out, size);
+        statuses.writeTo(out, size);
+        tasks.writeTo(out, size);
+        out.writeInt(taskKeys.size());
+        for (Map.Entry<Long, Integer> taskKey : taskKeys.entrySet()) {
+            out.writeLong(taskKey.getKey());
+            out.writeInt(taskKey.getValue());
+        }
+        ipIndex.writeTo(out);
+        userIndex.writeTo(out);
+        eventIndex.writeTo(out);
+        statusIndex.writeTo(out);
+        taskIndex.writeTo(out);
+        rollup.writeTo(out);
+    }
+
+    /**
+     * Reads a sealed store written by {@link #writeTo}. With {@code memory}, the mapping
+     * {@code buffer} was taken from, the columns and posting lists stay in the mapping and the
+     * store owns it.
+     */
+    static LogStore readFrom(ByteBuffer buffer, NativeMemory memory) {
+        LogStore store = new LogStore(StringDictionary.readFrom(buffer), StringDictionary.readFrom(buffer));
+        store.dropArrays();
+        store.size = buffer.getInt(buffer.position());
+        store.dates = memory != null ? memory.readLongs(buffer) : LongColumn.of(SnapshotFile.readLongs(buffer));
+        store.ipIds = readInts(buffer, memory);
+        store.userIds = readInts(buffer, memory);
+        store.events = readBytes(buffer, memory);
+        store.statuses = readBytes(buffer, memory);
+        store.tasks = readInts(buffer, memory);
+        int taskKeyCount = buffer.getInt();
+        for (int i = 0; i < taskKeyCount; i++) {
+            store.taskKeys.put(buffer.getLong(), buffer.getInt());
+        }
+        store.ipIndex = PostingIndex.readFrom(buffer, memory);
+        store.userIndex = PostingIndex.readFrom(buffer, memory);
+        store.eventIndex = PostingIndex.readFrom(buffer, memory);
+        store.statusIndex = PostingIndex.readFrom(buffer, memory);
+        store.taskIndex = PostingIndex.readFrom(buffer, memory);
+        store.rollup = Rollup.readFrom(buffer, store.events, store.statuses, store.tasks);
+        store.memory = memory;
+        store.sorted = true;
+        store.sealed = true;
+        return store;
+    }
+
+    private static IntColumn readInts(ByteBuffer buffer, NativeMemory memory) {
+        return memory != null ? memory.readInts(buffer) : IntColumn.of(SnapshotFile.readInts(buffer));
+    }
+
+    private static ByteColumn readBytes(ByteBuffer buffer, NativeMemory memory) {
+        return memory != null ? memory.readBytes(buffer) : ByteColumn.of(SnapshotFile.readBytes(buffer));
+    }
+}
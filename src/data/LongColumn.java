@@ -0,0 +1,50 @@
+package data;
+
+import java.io.IOException;
+
+/**
+ * Read-only long values of a {@link LogStore} column: a heap array, or native memory of an off-heap
+ * store (see {@link NativeMemory}).
+ */
+abstract class LongColumn {
+    static LongColumn of(long[] values) {
+        return new Heap(values);
+    }
+
+    abstract long get(int index);
+
+    /**
+     * The backing array, or null if the values are off the heap.
+     */
+    long[] array() {
+        return null;
+    }
+
+    /**
+     * Writes the first {@code length} values like {@link SnapshotFile.Output#writeLongs}.
+     */
+    abstract void writeTo(SnapshotFile.Output out, int length) throws IOException;
+
+    private static final class Heap extends LongColumn {
+        private final long[] values;
+
+        Heap(long[] values) {
+            this.values = values;
+        }
+
+        @Override
+        long get(int index) {
+            return values[index];
+        }
+
+        @Override
+        long[] array() {
+            return values;
+        }
+
+        @Override
+        void writeTo(SnapshotFile.Output out, int length) throws IOException {
+            out.writeLongs(values, length);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package data;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Receives the measurements of a {@link LogParser} as they are taken, to forward them to a metrics
+ * registry or to alert on slow queries and ingestion stalls; see
+ * {@link LogParserOptions#withMetricsListener}. Methods are called on the thread that did the work,
+ * possibly several at once, and should return quickly. The parser keeps its own totals either way,
+ * see {@link LogParser#getMetrics()}.
+ */
+public interface MetricsListener {
+    /**
+     * A query method of one of the query interfaces returned after {@code nanos}. Streams are
+     * measured up to the stream being returned, not while it is consumed.
+     */
+    default void queryCompleted(String method, long nanos) {
+    }
+
+    /**
+     * A range of a log file was parsed: the whole file when it is first read, the appended lines
+     * on refresh.
+     *
+     * @param lines    lines that became records
+     * @param rejected lines that were skipped
+     * @param bytes    size of the range in the file, compressed for a compressed file
+     * @param nanos    time spent tokenizing the range, summed over the threads that read it
+     */
+    default void rangeRead(Path file, long lines, long rejected, long bytes, long nanos) {
+    }
+
+    /**
+     * The first {@code bytes} of {@code file}, decompressed for a compressed file, were not read
+     * because they are the content of {@code rotatedFrom}, read before {@code file} was rotated
+     * from it.
+     */
+    default void rotatedBytesSkipped(Path file, Path rotatedFrom, long bytes) {
+    }
+
+    /**
+     * Reading {@code file} failed; the records read up to that point are kept.
+     */
+    default void readFailed(Path file, IOException e) {
+    }
+}
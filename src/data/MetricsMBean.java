@@ -0,0 +1,92 @@
+package data;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Answers the {@link LogParserMetricsMXBean} attributes from {@link LogParser#getMetrics()}.
+ */
+final class MetricsMBean implements LogParserMetricsMXBean {
+    private final Supplier<LogParserMetrics> metrics;
+
+    MetricsMBean(Supplier<LogParserMetrics> metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public long getLinesIngested() {
+        return metrics.get().getFiles().values().stream().mapToLong(LogParserMetrics.FileIngestion::getLines).sum();
+    }
+
+    @Override
+    public long getBytesIngested() {
+        return metrics.get().getFiles().values().stream().mapToLong(LogParserMetrics.FileIngestion::getBytes).sum();
+    }
+
+    @Override
+    public Map<String, Long> getRejectedLines() {
+        Map<String, Long> rejected = new TreeMap<>();
+        metrics.get().getRejectedLines().forEach((reason, count) -> rejected.put(reason.name(), count));
+        return rejected;
+    }
+
+    @Override
+    public long getReadErrors() {
+        return metrics.get().getReadErrors();
+    }
+
+    @Override
+    public long getRotatedBytesSkipped() {
+        return metrics.get().getRotatedBytesSkipped();
+    }
+
+    @Override
+    public long getMillisSinceLastRead() {
+        long last = metrics.get().getFiles().values().stream()
+                .mapToLong(LogParserMetrics.FileIngestion::getLastReadMillis).max().orElse(-1);
+        return last < 0 ? -1 : System.currentTimeMillis() - last;
+    }
+
+    @Override
+    public Map<String, Long> getQueryCounts() {
+        return queries(LogParserMetrics.QueryLatency::getCount);
+    }
+
+    @Override
+    public Map<String, Long> getQueryMeanNanos() {
+        return queries(LogParserMetrics.QueryLatency::getMeanNanos);
+    }
+
+    @Override
+    public Map<String, Long> getQueryP99Nanos() {
+        return queries(LogParserMetrics.QueryLatency::getP99Nanos);
+    }
+
+    @Override
+    public Map<String, Long> getQueryMaxNanos() {
+        return queries(LogParserMetrics.QueryLatency::getMaxNanos);
+    }
+
+    @Override
+    public long getRowsScanned() {
+        return metrics.get().getRowsScanned();
+    }
+
+    @Override
+    public long getRowsMatched() {
+        return metrics.get().getRowsMatched();
+    }
+
+    @Override
+    public long getStoreBytes() {
+        return metrics.get().getStoreBytes();
+    }
+
+    private Map<String, Long> queries(ToLongFunction<LogParserMetrics.QueryLatency> value) {
+        Map<String, Long> values = new TreeMap<>();
+        metrics.get().getQueries().forEach((method, latency) -> values.put(method, value.applyAsLong(latency)));
+        return values;
+    }
+}
@@ -0,0 +1,154 @@
+package data;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running totals behind {@link LogParserMetrics}, shared by the reader, the scans and the query
+ * methods of one parser, and forwarded to its {@link MetricsListener}. Recording uses adders and
+ * atomics only, so concurrent readers and writers do not contend on a lock.
+ */
+final class MetricsRecorder {
+    private static final MetricsListener NO_LISTENER = new MetricsListener() {
+    };
+
+    private static final class FileCounters {
+        final LongAdder lines = new LongAdder();
+        final AtomicLongArray rejected = new AtomicLongArray(RejectReason.values().length);
+        final LongAdder bytes = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+        volatile long lastReadMillis;
+    }
+
+    /**
+     * Counts of one range being read, possibly by several chunk tasks at once.
+     */
+    final class RangeRead {
+        private final Path file;
+        private final long bytes;
+        private final LongAdder lines = new LongAdder();
+        private final AtomicLongArray rejected = new AtomicLongArray(RejectReason.values().length);
+        private final LongAdder nanos = new LongAdder();
+
+        private RangeRead(Path file, long bytes) {
+            this.file = file;
+            this.bytes = bytes;
+        }
+
+        /**
+         * Adds what {@code tokenizer} counted; a tokenizer is added once, after its last chunk.
+         */
+        void add(LogLineTokenizer tokenizer, long tokenizeNanos) {
+            lines.add(tokenizer.accepted());
+            long[] counts = tokenizer.rejected();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != 0) {
+                    rejected.addAndGet(i, counts[i]);
+                }
+            }
+            nanos.add(tokenizeNanos);
+        }
+
+        /**
+         * Adds the counts to the totals of the file once the range is read.
+         */
+        void finish() {
+            FileCounters counters = files.computeIfAbsent(file, ignored -> new FileCounters());
+            long rejectedLines = 0;
+            for (int i = 0; i < rejected.length(); i++) {
+                long count = rejected.get(i);
+                counters.rejected.addAndGet(i, count);
+                rejectedLines += count;
+            }
+            counters.lines.add(lines.sum());
+            counters.bytes.add(bytes);
+            counters.nanos.add(nanos.sum());
+            counters.lastReadMillis = System.currentTimeMillis();
+            listener.rangeRead(file, lines.sum(), rejectedLines, bytes, nanos.sum());
+        }
+    }
+
+    private final MetricsListener listener;
+    private final Map<Path, FileCounters> files = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> queries = new ConcurrentHashMap<>();
+    private final LongAdder readErrors = new LongAdder();
+    private final LongAdder rotatedBytesSkipped = new LongAdder();
+    private final LongAdder rowsScanned = new LongAdder();
+    private final LongAdder rowsMatched = new LongAdder();
+
+    /**
+     * @param listener receives every measurement, or null
+     */
+    MetricsRecorder(MetricsListener listener) {
+        this.listener = listener != null ? listener : NO_LISTENER;
+    }
+
+    RangeRead startRead(Path file, long bytes) {
+        return new RangeRead(file, bytes);
+    }
+
+    /**
+     * Counts an I/O error and reports it the way the parser always did, on standard error.
+     */
+    void readFailed(Path file, IOException e) {
+        e.printStackTrace();
+        readErrors.increment();
+        listener.readFailed(file, e);
+    }
+
+    void rotatedBytesSkipped(Path file, Path rotatedFrom, long bytes) {
+        rotatedBytesSkipped.add(bytes);
+        listener.rotatedBytesSkipped(file, rotatedFrom, bytes);
+    }
+
+    void scanned(long scanned, long matched) {
+        rowsScanned.add(scanned);
+        rowsMatched.add(matched);
+    }
+
+    void queryCompleted(String method, long nanos) {
+        queries.computeIfAbsent(method, ignored -> new LatencyHistogram()).record(nanos);
+        listener.queryCompleted(method, nanos);
+    }
+
+    LogParserMetrics snapshot(List<Segment> segments) {
+        Map<Path, LogParserMetrics.FileIngestion> fileIngestions = new TreeMap<>();
+        long[] totalRejected = new long[RejectReason.values().length];
+        files.forEach((file, counters) -> {
+            long[] rejected = new long[totalRejected.length];
+            for (int i = 0; i < rejected.length; i++) {
+                rejected[i] = counters.rejected.get(i);
+                totalRejected[i] += rejected[i];
+            }
+            fileIngestions.put(file, new LogParserMetrics.FileIngestion(counters.lines.sum(), reasons(rejected),
+                    counters.bytes.sum(), counters.nanos.sum(), counters.lastReadMillis));
+        });
+        Map<String, LogParserMetrics.QueryLatency> latencies = new TreeMap<>();
+        queries.forEach((method, histogram) -> latencies.put(method, histogram.snapshot()));
+        long storeBytes = 0;
+        int loaded = 0;
+        for (Segment segment : segments) {
+            if (segment.isLoaded()) {
+                storeBytes += segment.bytes();
+                loaded++;
+            }
+        }
+        return new LogParserMetrics(Collections.unmodifiableMap(fileIngestions), reasons(totalRejected),
+                readErrors.sum(), rotatedBytesSkipped.sum(), Collections.unmodifiableMap(latencies), rowsScanned.sum(),
+                rowsMatched.sum(), storeBytes, loaded, segments.size());
+    }
+
+    private static Map<RejectReason, Long> reasons(long[] counts) {
+        Map<RejectReason, Long> reasons = new EnumMap<>(RejectReason.class);
+        for (RejectReason reason : RejectReason.values()) {
+            if (counts[reason.ordinal()] != 0) {
+                reasons.put(reason, counts[reason.ordinal()]);
+            }
+        }
+        return Collections.unmodifiableMap(reasons);
+    }
+}
@@ -0,0 +1,204 @@
+package data;
+
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * Native memory that holds the columns and posting lists of one off-heap {@link LogStore}: either
+ * allocated for a store that was parsed, or a read-only mapping of the store's block of the
+ * {@link SnapshotFile}, which processes mapping the same snapshot share through the page cache.
+ * Values are little-endian, as in the snapshot, so a mapped block is used as it is.
+ * <p>
+ * The memory belongs to a shared {@link ResourceScope}: {@link #close()} releases it at once,
+ * after which reading it throws {@link IllegalStateException} in every thread; otherwise it is
+ * released once the store is unreachable, the way an evicted heap store is collected. Built on the
+ * incubating foreign memory API of JDK 17, so only used when the {@code jdk.incubator.foreign}
+ * module is added, see {@link LogParserOptions#withOffHeapStore}.
+ */
+final class NativeMemory implements AutoCloseable {
+    private static final String MODULE = "jdk.incubator.foreign";
+    private static final Cleaner CLEANER = Cleaner.create();
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private final ResourceScope scope = ResourceScope.newSharedScope(CLEANER);
+    private MemorySegment mapping;
+    private long bytes;
+
+    private NativeMemory() {
+    }
+
+    /**
+     * True if the module is there; check before touching this class, which cannot be loaded
+     * without it.
+     */
+    static boolean isAvailable() {
+        return ModuleLayer.boot().findModule(MODULE).isPresent();
+    }
+
+    static String unavailableMessage() {
+        return "Off-heap stores need the " + MODULE + " module, run with --add-modules " + MODULE;
+    }
+
+    /**
+     * Memory to copy the columns of a parsed store into.
+     */
+    static NativeMemory allocate() {
+        return new NativeMemory();
+    }
+
+    /**
+     * Maps {@code length} bytes of {@code file} from {@code offset}, read-only; see {@link #buffer()}.
+     */
+    static NativeMemory map(Path file, long offset, long length) throws IOException {
+        NativeMemory memory = new NativeMemory();
+        try {
+            memory.mapping = MemorySegment.mapFile(file, offset, length, FileChannel.MapMode.READ_ONLY, memory.scope);
+        } catch (IOException | RuntimeException e) {
+            memory.close();
+            throw e;
+        }
+        memory.bytes = length;
+        return memory;
+    }
+
+    /**
+     * The mapped bytes, positioned at the start. Columns read from it with {@link #readLongs},
+     * {@link #readInts} and {@link #readBytes} stay in the mapping.
+     */
+    ByteBuffer buffer() {
+        return mapping.asByteBuffer().order(ORDER);
+    }
+
+    /**
+     * Reads a column written by {@link SnapshotFile.Output#writeLongs} from {@link #buffer()}.
+     */
+    LongColumn readLongs(ByteBuffer buffer) {
+        return new Longs(slice(buffer, Long.BYTES));
+    }
+
+    IntColumn readInts(ByteBuffer buffer) {
+        return new Ints(slice(buffer, Integer.BYTES));
+    }
+
+    ByteColumn readBytes(ByteBuffer buffer) {
+        return new Bytes(slice(buffer, Byte.BYTES));
+    }
+
+    private MemorySegment slice(ByteBuffer buffer, int width) {
+        long length = (long) buffer.getInt() * width;
+        MemorySegment slice = mapping.asSlice(buffer.position(), length);
+        buffer.position(buffer.position() + (int) length);
+        return slice;
+    }
+
+    LongColumn copy(long[] values, int length) {
+        MemorySegment segment = allocate((long) length * Long.BYTES, Long.BYTES);
+        for (int i = 0; i < length; i++) {
+            MemoryAccess.setLongAtIndex(segment, i, ORDER, values[i]);
+        }
+        return new Longs(segment);
+    }
+
+    IntColumn copy(int[] values, int length) {
+        MemorySegment segment = allocate((long) length * Integer.BYTES, Integer.BYTES);
+        for (int i = 0; i < length; i++) {
+            MemoryAccess.setIntAtIndex(segment, i, ORDER, values[i]);
+        }
+        return new Ints(segment);
+    }
+
+    ByteColumn copy(byte[] values, int length) {
+        MemorySegment segment = allocate(length, Byte.BYTES);
+        segment.copyFrom(MemorySegment.ofArray(values).asSlice(0, length));
+        return new Bytes(segment);
+    }
+
+    private MemorySegment allocate(long size, long alignment) {
+        bytes += size;
+        return MemorySegment.allocateNative(Math.max(size, alignment), alignment, scope);
+    }
+
+    /**
+     * Bytes allocated or mapped.
+     */
+    long bytes() {
+        return bytes;
+    }
+
+    /**
+     * Releases the memory; a second call does nothing.
+     */
+    @Override
+    public void close() {
+        if (scope.isAlive()) {
+            scope.close();
+        }
+    }
+
+    private static void write(SnapshotFile.Output out, MemorySegment segment, int length) throws IOException {
+        out.writeInt(length);
+        out.writeRaw(segment.asByteBuffer().order(ORDER));
+    }
+
+    private static final class Longs extends LongColumn {
+        private final MemorySegment segment;
+
+        Longs(MemorySegment segment) {
+            this.segment = segment;
+        }
+
+        @Override
+        long get(int index) {
+            return MemoryAccess.getLongAtIndex(segment, index, ORDER);
+        }
+
+        @Override
+        void writeTo(SnapshotFile.Output out, int length) throws IOException {
+            write(out, segment.asSlice(0, (long) length * Long.BYTES), length);
+        }
+    }
+
+    private static final class Ints extends IntColumn {
+        private final MemorySegment segment;
+
+        Ints(MemorySegment segment) {
+            this.segment = segment;
+        }
+
+        @Override
+        int get(int index) {
+            return MemoryAccess.getIntAtIndex(segment, index, ORDER);
+        }
+
+        @Override
+        void writeTo(SnapshotFile.Output out, int length) throws IOException {
+            write(out, segment.asSlice(0, (long) length * Integer.BYTES), length);
+        }
+    }
+
+    private static final class Bytes extends ByteColumn {
+        private final MemorySegment segment;
+
+        Bytes(MemorySegment segment) {
+            this.segment = segment;
+        }
+
+        @Override
+        byte get(int index) {
+            return MemoryAccess.getByteAtOffset(segment, index);
+        }
+
+        @Override
+        void writeTo(SnapshotFile.Output out, int length) throws IOException {
+            write(out, segment.asSlice(0, length), length);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package data;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Collects the rows matching a filter into a result container, like
+ * {@link java.util.stream.Stream#collect(Supplier, BiConsumer, BiConsumer)}: the combiner merges its
+ * second container into the first. A store whose {@link LogStore.Cursor} has fewer than
+ * {@code threshold} candidate rows is scanned on the calling thread; a larger one is split into row
+ * partitions that are scanned on a {@link ForkJoinPool}, each into its own container, and the
+ * containers are combined as the tasks join. Without a pool every scan is serial.
+ */
+final class ParallelScan {
+    /**
+     * Partitions are not split below this many candidate rows.
+     */
+    private static final int MIN_PARTITION = 4096;
+    /**
+     * Partitions per pool thread, so threads that finish early can steal work.
+     */
+    private static final int PARTITIONS_PER_THREAD = 4;
+
+    /**
+     * Adds a matching row to a container. Returning false skips the rest of the partition the row
+     * belongs to; rows of a partition come in row order, and thus in date order for a sealed store.
+     */
+    interface RowAccumulator<A> {
+        boolean accept(A container, LogStore store, int row);
+    }
+
+    private final ForkJoinPool pool;
+    private final int threshold;
+    private final MetricsRecorder metrics;
+
+    /**
+     * @param pool      runs the partitions, or null to scan serially
+     * @param threshold number of candidate rows from which a store is scanned in partitions
+     * @param metrics   counts the rows scanned and matched
+     */
+    ParallelScan(ForkJoinPool pool, int threshold, MetricsRecorder metrics) {
+        this.pool = pool;
+        this.threshold = threshold;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Lets the pool threads end once the partitions they run are done.
+     */
+    void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    <A> A collect(List<LogStore> stores, RowFilter filter, Supplier<A> supplier, RowAccumulator<A> accumulator,
+                  BiConsumer<A, A> combiner) {
+        A result = supplier.get();
+        for (LogStore store : stores) {
+            collect(store, filter, result, supplier, accumulator, combiner);
+        }
+        return result;
+    }
+
+    /**
+     * Collects the rows of one store into {@code container}.
+     */
+    <A> void collect(LogStore store, RowFilter filter, A container, Supplier<A> supplier,
+                     RowAccumulator<A> accumulator, BiConsumer<A, A> combiner) {
+        LogStore.Cursor cursor = store.cursor(filter);
+        if (pool == null || cursor.remaining() < threshold) {
+            scan(store, cursor, container, accumulator, metrics);
+            return;
+        }
+        int partition = Math.max(MIN_PARTITION, cursor.remaining() / (pool.getParallelism() * PARTITIONS_PER_THREAD));
+        A collected = pool.invoke(new PartitionTask<>(store, cursor, partition, supplier, accumulator, combiner, metrics));
+        combiner.accept(container, collected);
+    }
+
+    private static <A> void scan(LogStore store, LogStore.Cursor cursor, A container, RowAccumulator<A> accumulator,
+                                 MetricsRecorder metrics) {
+        int candidates = cursor.remaining();
+        long matched = 0;
+        for (int row = cursor.next(); row != -1; row = cursor.next()) {
+            matched++;
+            if (!accumulator.accept(container, store, row)) {
+                break;
+            }
+        }
+        metrics.scanned(candidates - cursor.remaining(), matched);
+    }
+
+    // Tasks are never serialized, and their stores and accumulators are not serializable.
+    @SuppressWarnings("serial")
+    private static final class PartitionTask<A> extends RecursiveTask<A> {
+        private final LogStore store;
+        private final LogStore.Cursor cursor;
+        private final int partition;
+        private final Supplier<A> supplier;
+        private final RowAccumulator<A> accumulator;
+        private final BiConsumer<A, A> combiner;
+        private final MetricsRecorder metrics;
+
+        PartitionTask(LogStore store, LogStore.Cursor cursor, int partition, Supplier<A> supplier,
+                      RowAccumulator<A> accumulator, BiConsumer<A, A> combiner, MetricsRecorder metrics) {
+            this.store = store;
+            this.cursor = cursor;
+            this.partition = partition;
+            this.supplier = supplier;
+            this.accumulator = accumulator;
+            this.combiner = combiner;
+            this.metrics = metrics;
+        }
+
+        @Override
+        protected A compute() {
+            if (cursor.remaining() > partition) {
+                LogStore.Cursor split = cursor.trySplit();
+                PartitionTask<A> right = new PartitionTask<>(store, split, partition, supplier, accumulator, combiner, metrics);
+                right.fork();
+                A left = compute();
+                combiner.accept(left, right.join());
+                return left;
+            }
+            A container = supplier.get();
+            scan(store, cursor, container, accumulator, metrics);
+            return container;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Posting lists of row indexes per key, packed into two arrays: the rows of key {@code k} are
+ * {@code rows[offsets[k] .. offsets[k + 1])}, in ascending row order. The rows, one per indexed row
+ * of the store, can be moved off the heap; the offsets, one per key, stay.
+ */
+final class PostingIndex {
+    private final int[] offsets;
+    private final IntColumn rows;
+
+    /**
+     * @param keys row keys, each in {@code [0, keyCount)} or negative for rows that are not indexed
+     */
+    PostingIndex(int[] keys, int size, int keyCount) {
+        offsets = new int[keyCount + 1];
+        for (int row = 0; row < size; row++) {
+            if (keys[row] >= 0) {
+                offsets[keys[row] + 1]++;
+            }
+        }
+        for (int key = 0; key < keyCount; key++) {
+            offsets[key + 1] += offsets[key];
+        }
+        int[] rows = new int[offsets[keyCount]];
+        int[] next = new int[keyCount];
+        for (int row = 0; row < size; row++) {
+            int key = keys[row];
+            if (key >= 0) {
+                rows[offsets[key] + next[key]++] = row;
+            }
+        }
+        this.rows = IntColumn.of(rows);
+    }
+
+    private PostingIndex(int[] offsets, IntColumn rows) {
+        this.offsets = offsets;
+        this.rows = rows;
+    }
+
+    PostingIndex(byte[] keys, int size, int keyCount) {
+        this(widen(keys, size), size, keyCount);
+    }
+
+    private static int[] widen(byte[] keys, int size) {
+        int[] result = new int[size];
+        for (int row = 0; row < size; row++) {
+            result[row] = keys[row];
+        }
+        return result;
+    }
+
+    IntColumn rows() {
+        return rows;
+    }
+
+    /**
+     * Returns this index with its rows copied into {@code memory}.
+     */
+    PostingIndex copyTo(NativeMemory memory) {
+        return new PostingIndex(offsets, memory.copy(rows.array(), offsets[offsets.length - 1]));
+    }
+
+    /**
+     * Position in {@link #rows()} of the first row of {@code key} that is {@code >= row}. For rows
+     * {@code [from, to)} the postings are {@code rows()[position(key, from) .. position(key, to))};
+     * unknown keys have no postings.
+     */
+    int position(int key, int row) {
+        if (key < 0 || key >= offsets.length - 1) {
+            return 0;
+        }
+        return search(offsets[key], offsets[key + 1], row);
+    }
+
+    private int search(int low, int high, int row) {
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (rows.get(middle) < row) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    void writeTo(SnapshotFile.Output out) throws IOException {
+        out.writeInts(offsets, offsets.length);
+        rows.writeTo(out, offsets[offsets.length - 1]);
+    }
+
+    /**
+     * Reads an index written by {@link #writeTo}, leaving the rows in {@code memory} if it is not
+     * null, see {@link LogStore#readFrom}.
+     */
+    static PostingIndex readFrom(ByteBuffer buffer, NativeMemory memory) {
+        int[] offsets = SnapshotFile.readInts(buffer);
+        return new PostingIndex(offsets, memory != null ? memory.readInts(buffer) : IntColumn.of(SnapshotFile.readInts(buffer)));
+    }
+}
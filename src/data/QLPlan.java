@@ -0,0 +1,199 @@
+package data;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parsed form of a QL query:
+ * <pre>
+ * get &lt;field&gt; [for &lt;field&gt; = "&lt;value&gt;" [and date between "&lt;after&gt;" and "&lt;before&gt;"]]
+ * </pre>
+ * where a field is one of {@code ip, user, date, event, status}. Any value or date can be a
+ * {@code ?} placeholder that is filled in by {@link #bind}. Dates use the log format
+ * {@code d.M.yyyy H:m:s} and, as in the typed queries, both ends of {@code between} are inclusive.
+ * An event value may carry a task number, e.g. {@code "SOLVE_TASK 18"}.
+ */
+final class QLPlan {
+    enum Field {
+        IP, USER, DATE, EVENT, STATUS
+    }
+
+    private static final String FIELD = "(ip|user|date|event|status)";
+    private static final String VALUE = "(?:\"([^\"]*)\"|(\\?))";
+    private static final Pattern QUERY = Pattern.compile(
+            "\\s*get\\s+" + FIELD +
+                    "(?:\\s+for\\s+" + FIELD + "\\s*=\\s*" + VALUE +
+                    "(?:\\s+and\\s+date\\s+between\\s+" + VALUE + "\\s+and\\s+" + VALUE + ")?)?\\s*");
+    private static final Pattern TASK_EVENT = Pattern.compile("(SOLVE_TASK|DONE_TASK)\\s*(-?\\d+)");
+
+    /**
+     * A plan with all placeholders filled in: the field to collect and the filter to collect it from.
+     */
+    static final class Bound {
+        final Field target;
+        final RowFilter filter;
+
+        private Bound(Field target, RowFilter filter) {
+            this.target = target;
+            this.filter = filter;
+        }
+    }
+
+    private final Field target;
+    private final Field condition;
+    private final String value;
+    private final String after;
+    private final String before;
+    private final boolean bounded;
+    private final int parameterCount;
+
+    private QLPlan(Field target, Field condition, String value, String after, String before, boolean bounded) {
+        this.target = target;
+        this.condition = condition;
+        this.value = value;
+        this.after = after;
+        this.before = before;
+        this.bounded = bounded;
+        int count = 0;
+        if (condition != null && value == null) count++;
+        if (bounded && after == null) count++;
+        if (bounded && before == null) count++;
+        this.parameterCount = count;
+    }
+
+    /**
+     * @throws IllegalArgumentException if {@code query} does not follow the grammar or one of its
+     *                                  literal values cannot be read for its field
+     */
+    static QLPlan parse(String query) {
+        Matcher matcher = QUERY.matcher(query);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Invalid query: " + query);
+        }
+        Field target = field(matcher.group(1));
+        if (matcher.group(2) == null) {
+            return new QLPlan(target, null, null, null, null, false);
+        }
+        QLPlan plan = new QLPlan(target, field(matcher.group(2)), matcher.group(3),
+                matcher.group(5), matcher.group(7), matcher.group(5) != null || matcher.group(6) != null);
+        plan.checkLiterals();
+        return plan;
+    }
+
+    /**
+     * Reads the literal values the way {@link #bind} does, so that binding a plan can only fail on
+     * its parameters.
+     */
+    private void checkLiterals() {
+        if (value != null) {
+            apply(RowFilter.between(null, null), condition, value);
+        }
+        if (after != null) {
+            date(after);
+        }
+        if (before != null) {
+            date(before);
+        }
+    }
+
+    private static Field field(String name) {
+        return Field.valueOf(name.toUpperCase(Locale.ROOT));
+    }
+
+    Field target() {
+        return target;
+    }
+
+    /**
+     * True for the bare {@code get <field>} form.
+     */
+    boolean isUnfiltered() {
+        return condition == null;
+    }
+
+    int parameterCount() {
+        return parameterCount;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the number of parameters does not match the placeholders
+     *                                  or a value cannot be read for its field
+     */
+    Bound bind(Object... parameters) {
+        if (parameters.length != parameterCount) {
+            throw new IllegalArgumentException("Expected " + parameterCount + " parameters, got " + parameters.length);
+        }
+        int next = 0;
+        Object conditionValue = null;
+        if (condition != null) {
+            conditionValue = value != null ? value : parameters[next++];
+        }
+        Date from = null;
+        Date to = null;
+        if (bounded) {
+            from = date(after != null ? after : parameters[next++]);
+            to = date(before != null ? before : parameters[next]);
+        }
+        RowFilter filter = RowFilter.between(from, to);
+        if (condition != null) {
+            filter = conditionValue == null ? filter.none() : apply(filter, condition, conditionValue);
+        }
+        return new Bound(target, filter);
+    }
+
+    private static RowFilter apply(RowFilter filter, Field field, Object value) {
+        return switch (field) {
+            case IP -> filter.ip(value.toString());
+            case USER -> filter.user(value.toString());
+            case DATE -> filter.on(date(value).getTime());
+            case EVENT -> applyEvent(filter, value);
+            case STATUS -> filter.status(value instanceof Status ? (Status) value : enumValue(Status.class, value.toString()));
+        };
+    }
+
+    private static RowFilter applyEvent(RowFilter filter, Object value) {
+        if (value instanceof Event) {
+            return filter.event((Event) value);
+        }
+        Matcher task = TASK_EVENT.matcher(value.toString().trim());
+        if (task.matches()) {
+            int number;
+            try {
+                number = Integer.parseInt(task.group(2));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid task: " + task.group(2), e);
+            }
+            return filter.event(Event.valueOf(task.group(1))).task(number);
+        }
+        return filter.event(enumValue(Event.class, value.toString()));
+    }
+
+    /**
+     * Unknown names give null, which filters out every row, like a user that never logged anything.
+     */
+    private static <E extends Enum<E>> E enumValue(Class<E> type, String name) {
+        try {
+            return Enum.valueOf(type, name.trim());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A null parameter leaves that end of the range open.
+     */
+    private static Date date(Object value) {
+        if (value == null || value instanceof Date) {
+            return (Date) value;
+        }
+        try {
+            return new SimpleDateFormat(LogParser.DATE_PATTERN).parse(value.toString());
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("Invalid date: " + value, e);
+        }
+    }
+}
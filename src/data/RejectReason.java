@@ -0,0 +1,23 @@
+package data;
+
+/**
+ * Why a log line was skipped instead of becoming a record, see {@link LogParserMetrics#getRejectedLines()}.
+ */
+public enum RejectReason {
+    /**
+     * The line does not have exactly five tab separated fields.
+     */
+    WRONG_FIELD_COUNT,
+    /**
+     * The date field is not a {@code d.M.yyyy H:m:s} date.
+     */
+    UNPARSEABLE_DATE,
+    /**
+     * The event field is not an {@link Event}, or its task number is not a number.
+     */
+    UNKNOWN_EVENT,
+    /**
+     * The status field is not a {@link Status}.
+     */
+    UNKNOWN_STATUS
+}
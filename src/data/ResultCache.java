@@ -0,0 +1,129 @@
+package data;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Least recently used cache of query results, keyed by the query kind and its filter. Every entry
+ * remembers the date range its query covered, so ingesting new records only invalidates the entries
+ * whose range includes the new dates.
+ * <p>
+ * Results are computed outside the lock; concurrent misses of the same key compute it twice. A
+ * result computed while an invalidation happened is returned but not cached, since it may have been
+ * computed from the records before the change. Callers get their own copy of a cached collection.
+ */
+final class ResultCache {
+    private static final class Entry {
+        final Object value;
+        final long after;
+        final long before;
+
+        Entry(Object value, long after, long before) {
+            this.value = value;
+            this.after = after;
+            this.before = before;
+        }
+    }
+
+    private final int maxEntries;
+    private final Map<Object, Entry> entries;
+    private long epoch;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * @param maxEntries number of results kept; 0 disables caching
+     */
+    ResultCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Entry> eldest) {
+                if (size() > ResultCache.this.maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached result for {@code key}, or computes and caches it.
+     *
+     * @param after  first date the query covers
+     * @param before last date the query covers
+     */
+    @SuppressWarnings("unchecked")
+    <T> T get(Object key, long after, long before, Supplier<T> query) {
+        if (maxEntries == 0) {
+            return query.get();
+        }
+        long startEpoch;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hits++;
+                return (T) copy(entry.value);
+            }
+            misses++;
+            startEpoch = epoch;
+        }
+        T value = query.get();
+        synchronized (this) {
+            if (epoch == startEpoch) {
+                entries.put(key, new Entry(copy(value), after, before));
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Drops the results of queries whose date range overlaps {@code [from, to]}.
+     */
+    synchronized void invalidate(long from, long to) {
+        epoch++;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.after <= to && entry.before >= from) {
+                iterator.remove();
+                invalidations++;
+            }
+        }
+    }
+
+    synchronized ResultCacheStatistics statistics() {
+        return new ResultCacheStatistics(hits, misses, evictions, invalidations, entries.size(), maxEntries);
+    }
+
+    /**
+     * Copies the mutable parts of a result: collections, nested ones included, and dates.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object copy(Object value) {
+        if (value instanceof EnumSet) {
+            return ((EnumSet) value).clone();
+        }
+        if (value instanceof Set) {
+            Set<Object> copy = new HashSet<>(((Set<?>) value).size() * 4 / 3 + 1);
+            for (Object element : (Set<?>) value) {
+                copy.add(copy(element));
+            }
+            return copy;
+        }
+        if (value instanceof Map) {
+            Map<Object, Object> copy = new LinkedHashMap<>(((Map<?, ?>) value).size() * 4 / 3 + 1);
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                copy.put(entry.getKey(), copy(entry.getValue()));
+            }
+            return copy;
+        }
+        if (value instanceof Date) {
+            return new Date(((Date) value).getTime());
+        }
+        return value;
+    }
+}
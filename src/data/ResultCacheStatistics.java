@@ -0,0 +1,67 @@
+package data;
+
+/**
+ * Counters of the result cache of a {@link LogParser}, as of one moment; see
+ * {@link LogParserOptions#withResultCache}.
+ */
+public final class ResultCacheStatistics {
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long invalidations;
+    private final int size;
+    private final int maxSize;
+
+    ResultCacheStatistics(long hits, long misses, long evictions, long invalidations, int size, int maxSize) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.invalidations = invalidations;
+        this.size = size;
+        this.maxSize = maxSize;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Fraction of lookups answered from the cache, or 0 before the first lookup.
+     */
+    public double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * Results dropped to make room for newer ones.
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Results dropped because records within their date range were ingested or expired.
+     */
+    public long getInvalidations() {
+        return invalidations;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + hits + " misses=" + misses + " evictions=" + evictions + " invalidations=" + invalidations
+                + " size=" + size + "/" + maxSize;
+    }
+}
@@ -0,0 +1,292 @@
+package data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Row counts of a sealed {@link LogStore} by event, status and task, pre-aggregated per day, hour
+ * and minute. Because the rows are ordered by date every bucket is a contiguous slice of rows, so a
+ * count over {@code [from, to)} adds up the whole buckets inside the slice at the coarsest level,
+ * goes one level finer for the partial buckets at both edges, and only scans the rows left over at
+ * the minute edges.
+ * <p>
+ * A level is kept only if it has at most a quarter as many cells (non-empty bucket and key pairs) as
+ * the store has rows; sparser levels would cost as much to add up as the rows they replace.
+ */
+final class Rollup {
+    /**
+     * Callback for {@link #forEach}: a group of {@code count} rows sharing event, status and task.
+     */
+    interface GroupConsumer {
+        void accept(Event event, Status status, int task, int count);
+    }
+
+    private static final long[] BUCKET_MILLIS = {86_400_000L, 3_600_000L, 60_000L};
+    private static final int MIN_COMPRESSION = 4;
+    private static final Event[] EVENTS = Event.values();
+    private static final Status[] STATUSES = Status.values();
+
+    /**
+     * One granularity. Bucket {@code b} covers rows {@code [rowStarts[b], rowStarts[b + 1])}; its
+     * cells are {@code [cellStarts[b], cellStarts[b + 1])} of {@code cellKeys} and {@code cellCounts}.
+     */
+    private static final class Level {
+        final int[] rowStarts;
+        final int[] cellStarts;
+        final int[] cellKeys;
+        final int[] cellCounts;
+
+        Level(int[] rowStarts, int[] cellStarts, int[] cellKeys, int[] cellCounts) {
+            this.rowStarts = rowStarts;
+            this.cellStarts = cellStarts;
+            this.cellKeys = cellKeys;
+            this.cellCounts = cellCounts;
+        }
+    }
+
+    private final ByteColumn events;
+    private final ByteColumn statuses;
+    private final IntColumn tasks;
+    private final byte[] keyEvents;
+    private final byte[] keyStatuses;
+    private final int[] keyTasks;
+    private final Level[] levels;
+
+    /**
+     * Builds the rollup of the first {@code size} rows of the given columns, which must be ordered
+     * by date. The columns are kept for scanning the edges and must not change afterwards.
+     */
+    Rollup(long[] dates, byte[] events, byte[] statuses, int[] tasks, int size) {
+        this.events = ByteColumn.of(events);
+        this.statuses = ByteColumn.of(statuses);
+        this.tasks = IntColumn.of(tasks);
+        Map<Long, Integer> keys = new HashMap<>();
+        int[] rowKeys = new int[size];
+        for (int row = 0; row < size; row++) {
+            rowKeys[row] = keys.computeIfAbsent(key(events[row], statuses[row], tasks[row]), key -> keys.size());
+        }
+        keyEvents = new byte[keys.size()];
+        keyStatuses = new byte[keys.size()];
+        keyTasks = new int[keys.size()];
+        for (Map.Entry<Long, Integer> entry : keys.entrySet()) {
+            long key = entry.getKey();
+            keyEvents[entry.getValue()] = (byte) (key >>> 40);
+            keyStatuses[entry.getValue()] = (byte) (key >>> 32);
+            keyTasks[entry.getValue()] = (int) key;
+        }
+
+        Level[] built = new Level[BUCKET_MILLIS.length];
+        int levelCount = 0;
+        for (long bucketMillis : BUCKET_MILLIS) {
+            Level level = buildLevel(dates, rowKeys, size, bucketMillis);
+            if (level == null) {
+                // Finer levels only have more cells.
+                break;
+            }
+            built[levelCount++] = level;
+        }
+        levels = Arrays.copyOf(built, levelCount);
+    }
+
+    private Rollup(ByteColumn events, ByteColumn statuses, IntColumn tasks, byte[] keyEvents, byte[] keyStatuses,
+                   int[] keyTasks, Level[] levels) {
+        this.events = events;
+        this.statuses = statuses;
+        this.tasks = tasks;
+        this.keyEvents = keyEvents;
+        this.keyStatuses = keyStatuses;
+        this.keyTasks = keyTasks;
+        this.levels = levels;
+    }
+
+    private Level buildLevel(long[] dates, int[] rowKeys, int size, long bucketMillis) {
+        int maxCells = size / MIN_COMPRESSION;
+        int[] rowStarts = new int[16];
+        int[] cellStarts = new int[16];
+        int[] cellKeys = new int[16];
+        int[] cellCounts = new int[16];
+        int[] slots = new int[keyTasks.length];
+        Arrays.fill(slots, -1);
+        int buckets = 0;
+        int cells = 0;
+        long bucket = 0;
+        for (int row = 0; row < size; row++) {
+            long rowBucket = Math.floorDiv(dates[row], bucketMillis);
+            if (row == 0 || rowBucket != bucket) {
+                for (int cell = buckets == 0 ? 0 : cellStarts[buckets - 1]; cell < cells; cell++) {
+                    slots[cellKeys[cell]] = -1;
+                }
+                if (buckets + 1 >= rowStarts.length) {
+                    rowStarts = Arrays.copyOf(rowStarts, rowStarts.length * 2);
+                    cellStarts = Arrays.copyOf(cellStarts, cellStarts.length * 2);
+                }
+                rowStarts[buckets] = row;
+                cellStarts[buckets] = cells;
+                buckets++;
+                bucket = rowBucket;
+            }
+            int key = rowKeys[row];
+            if (slots[key] == -1) {
+                if (cells == maxCells) {
+                    return null;
+                }
+                if (cells == cellKeys.length) {
+                    cellKeys = Arrays.copyOf(cellKeys, cells * 2);
+                    cellCounts = Arrays.copyOf(cellCounts, cells * 2);
+                }
+                slots[key] = cells;
+                cellKeys[cells] = key;
+                cellCounts[cells] = 0;
+                cells++;
+            }
+            cellCounts[slots[key]]++;
+        }
+        rowStarts = Arrays.copyOf(rowStarts, buckets + 1);
+        cellStarts = Arrays.copyOf(cellStarts, buckets + 1);
+        rowStarts[buckets] = size;
+        cellStarts[buckets] = cells;
+        return new Level(rowStarts, cellStarts, Arrays.copyOf(cellKeys, cells),
+                Arrays.copyOf(cellCounts, cells));
+    }
+
+    /**
+     * False if no level compresses well enough; counting then is a plain scan.
+     */
+    boolean hasLevels() {
+        return levels.length != 0;
+    }
+
+    private static long key(int event, int status, int task) {
+        return (long) event << 40 | (long) status << 32 | (task & 0xffffffffL);
+    }
+
+    /**
+     * Reports the rows of {@code [from, to)} that match the event, status and task conditions of
+     * {@code filter} to {@code action}, grouped by event, status and task. Rows scanned at the edges
+     * are reported one by one, so a group can be reported more than once. IP, user and date
+     * conditions are not looked at.
+     */
+    void forEach(int from, int to, RowFilter filter, GroupConsumer action) {
+        boolean[] matching = new boolean[keyTasks.length];
+        for (int key = 0; key < matching.length; key++) {
+            matching[key] = (filter.event == RowFilter.ANY || keyEvents[key] == filter.event) &&
+                    (filter.status == RowFilter.ANY || keyStatuses[key] == filter.status) &&
+                    filter.matchesTask(keyTasks[key]);
+        }
+        int[] counts = new int[keyTasks.length];
+        count(0, from, to, filter, matching, counts, action);
+        for (int key = 0; key < counts.length; key++) {
+            if (counts[key] != 0) {
+                action.accept(EVENTS[keyEvents[key]], STATUSES[keyStatuses[key]], keyTasks[key], counts[key]);
+            }
+        }
+    }
+
+    private void count(int depth, int from, int to, RowFilter filter, boolean[] matching, int[] counts,
+                       GroupConsumer action) {
+        if (from >= to) {
+            return;
+        }
+        if (depth == levels.length) {
+            for (int row = from; row < to; row++) {
+                byte event = events.get(row);
+                byte status = statuses.get(row);
+                int task = tasks.get(row);
+                if ((filter.event == RowFilter.ANY || event == filter.event) &&
+                        (filter.status == RowFilter.ANY || status == filter.status) &&
+                        filter.matchesTask(task)) {
+                    action.accept(EVENTS[event], STATUSES[status], task, 1);
+                }
+            }
+            return;
+        }
+        Level level = levels[depth];
+        int first = firstBucketFrom(level.rowStarts, from);
+        int end = lastBucketEnd(level.rowStarts, to);
+        if (first >= end) {
+            count(depth + 1, from, to, filter, matching, counts, action);
+            return;
+        }
+        // Cells of consecutive buckets are stored one after the other.
+        for (int cell = level.cellStarts[first]; cell < level.cellStarts[end]; cell++) {
+            int key = level.cellKeys[cell];
+            if (matching[key]) {
+                counts[key] += level.cellCounts[cell];
+            }
+        }
+        count(depth + 1, from, level.rowStarts[first], filter, matching, counts, action);
+        count(depth + 1, level.rowStarts[end], to, filter, matching, counts, action);
+    }
+
+    /**
+     * Smallest {@code b} with {@code rowStarts[b] >= row}.
+     */
+    private static int firstBucketFrom(int[] rowStarts, int row) {
+        int low = 0;
+        int high = rowStarts.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (rowStarts[middle] < row) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Largest {@code b} with {@code rowStarts[b] <= row}.
+     */
+    private static int lastBucketEnd(int[] rowStarts, int row) {
+        int low = 0;
+        int high = rowStarts.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (rowStarts[middle] > row) {
+                high = middle - 1;
+            } else {
+                low = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns this rollup scanning the edges in the given columns, which hold the same rows.
+     */
+    Rollup withColumns(ByteColumn events, ByteColumn statuses, IntColumn tasks) {
+        return new Rollup(events, statuses, tasks, keyEvents, keyStatuses, keyTasks, levels);
+    }
+
+    void writeTo(SnapshotFile.Output out) throws IOException {
+        out.writeBytes(keyEvents, keyEvents.length);
+        out.writeBytes(keyStatuses, keyStatuses.length);
+        out.writeInts(keyTasks, keyTasks.length);
+        out.writeInt(levels.length);
+        for (Level level : levels) {
+            out.writeInts(level.rowStarts, level.rowStarts.length);
+            out.writeInts(level.cellStarts, level.cellStarts.length);
+            out.writeInts(level.cellKeys, level.cellKeys.length);
+            out.writeInts(level.cellCounts, level.cellCounts.length);
+        }
+    }
+
+    /**
+     * Reads a rollup written by {@link #writeTo} for the store with the given columns.
+     */
+    static Rollup readFrom(ByteBuffer buffer, ByteColumn events, ByteColumn statuses, IntColumn tasks) {
+        byte[] keyEvents = SnapshotFile.readBytes(buffer);
+        byte[] keyStatuses = SnapshotFile.readBytes(buffer);
+        int[] keyTasks = SnapshotFile.readInts(buffer);
+        Level[] levels = new Level[buffer.getInt()];
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = new Level(SnapshotFile.readInts(buffer), SnapshotFile.readInts(buffer),
+                    SnapshotFile.readInts(buffer), SnapshotFile.readInts(buffer));
+        }
+        return new Rollup(events, statuses, tasks, keyEvents, keyStatuses, keyTasks, levels);
+    }
+}
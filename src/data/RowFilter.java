@@ -0,0 +1,124 @@
+package data;
+
+import java.util.Date;
+import java.util.Objects;
+
+/**
+ * Equality and date range predicate over {@link LogStore} rows. A null IP, user or subnet, ordinals
+ * equal to {@link #ANY} and {@link #anyTask} match every row, {@link #NONE} matches no row; the date
+ * range is inclusive on both ends, as in the query interfaces. Every int is a valid task number, so
+ * the absence of a task condition is a flag of its own. IPs and users are kept as strings because
+ * every store has its own dictionary ids.
+ */
+final class RowFilter {
+    static final int ANY = -1;
+    static final int NONE = -2;
+
+    final String ip;
+    final String user;
+    final IPv4.Subnet subnet;
+    final int event;
+    final int status;
+    final boolean anyTask;
+    /**
+     * Task number to match, unless {@link #anyTask}.
+     */
+    final int task;
+    final long after;
+    final long before;
+
+    private RowFilter(String ip, String user, IPv4.Subnet subnet, int event, int status, boolean anyTask, int task,
+                      long after, long before) {
+        this.ip = ip;
+        this.user = user;
+        this.subnet = subnet;
+        this.event = event;
+        this.status = status;
+        this.anyTask = anyTask;
+        this.task = task;
+        this.after = after;
+        this.before = before;
+    }
+
+    static RowFilter between(Date after, Date before) {
+        return new RowFilter(null, null, null, ANY, ANY, true, 0,
+                after == null ? Long.MIN_VALUE : after.getTime(),
+                before == null ? Long.MAX_VALUE : before.getTime());
+    }
+
+    /**
+     * Rows of {@code user} in the range; a null user matches nothing, as {@code user.equals(null)} did.
+     */
+    static RowFilter forUser(String user, Date after, Date before) {
+        RowFilter filter = between(after, before);
+        return user == null ? filter.none() : filter.user(user);
+    }
+
+    /**
+     * Rows of {@code ip} in the range; a null IP matches nothing.
+     */
+    static RowFilter forIP(String ip, Date after, Date before) {
+        RowFilter filter = between(after, before);
+        return ip == null ? filter.none() : filter.ip(ip);
+    }
+
+    RowFilter ip(String ip) {
+        return new RowFilter(ip, user, subnet, event, status, anyTask, task, after, before);
+    }
+
+    /**
+     * Rows whose IP is a canonical IPv4 address in {@code subnet}.
+     */
+    RowFilter subnet(IPv4.Subnet subnet) {
+        return new RowFilter(ip, user, subnet, event, status, anyTask, task, after, before);
+    }
+
+    RowFilter user(String user) {
+        return new RowFilter(ip, user, subnet, event, status, anyTask, task, after, before);
+    }
+
+    /**
+     * Narrows the date range to exactly {@code date}.
+     */
+    RowFilter on(long date) {
+        return new RowFilter(ip, user, subnet, event, status, anyTask, task, Math.max(after, date), Math.min(before, date));
+    }
+
+    /**
+     * Returns a filter that matches no row at all.
+     */
+    RowFilter none() {
+        return new RowFilter(ip, user, subnet, NONE, status, anyTask, task, after, before);
+    }
+
+    RowFilter event(Event event) {
+        return new RowFilter(ip, user, subnet, event == null ? NONE : event.ordinal(), status, anyTask, task, after, before);
+    }
+
+    RowFilter status(Status status) {
+        return new RowFilter(ip, user, subnet, event, status == null ? NONE : status.ordinal(), anyTask, task, after, before);
+    }
+
+    RowFilter task(int task) {
+        return new RowFilter(ip, user, subnet, event, status, false, task, after, before);
+    }
+
+    boolean matchesTask(int task) {
+        return anyTask || task == this.task;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof RowFilter)) return false;
+        RowFilter that = (RowFilter) o;
+        return event == that.event && status == that.status && anyTask == that.anyTask && task == that.task
+                && after == that.after && before == that.before && Objects.equals(ip, that.ip) && Objects.equals(user, that.user)
+                && Objects.equals(subnet, that.subnet);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(ip, user, subnet, event, status, anyTask, task, after, before);
+    }
+}
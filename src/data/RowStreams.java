@@ -0,0 +1,208 @@
+package data;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazily evaluated query results. Rows are pulled from {@link LogStore.Cursor}s only as elements
+ * are requested, so a stream that is cut short by {@code limit}, {@code findFirst} or similar stops
+ * scanning there. Every stream yields distinct values, like the {@code Set} the matching query
+ * method returns; dates come in ascending order.
+ * <p>
+ * IPs and users are deduplicated with a {@link BitSet} of their {@link GlobalDictionary} ids.
+ */
+final class RowStreams {
+    private static final Event[] EVENTS = Event.values();
+    private static final Status[] STATUSES = Status.values();
+
+    private RowStreams() {
+    }
+
+    static Stream<String> ips(List<LogStore> stores, RowFilter filter, GlobalDictionary dictionary) {
+        return strings(stores, filter, dictionary, true);
+    }
+
+    static Stream<String> users(List<LogStore> stores, RowFilter filter, GlobalDictionary dictionary) {
+        return strings(stores, filter, dictionary, false);
+    }
+
+    static Stream<String> allUsers(List<LogStore> stores, GlobalDictionary dictionary) {
+        BitSet seen = new BitSet(dictionary.size());
+        return stores.stream()
+                .flatMapToInt(store -> IntStream.of(store.globalUsers()))
+                .filter(id -> {
+                    boolean isNew = !seen.get(id);
+                    seen.set(id);
+                    return isNew;
+                })
+                .mapToObj(dictionary::valueOf);
+    }
+
+    private static Stream<String> strings(List<LogStore> stores, RowFilter filter, GlobalDictionary dictionary, boolean ips) {
+        BitSet seen = new BitSet(dictionary.size());
+        return StreamSupport.stream(new RowSpliterator<String>(stores, filter) {
+            @Override
+            String value(LogStore store, int row) {
+                int id = ips ? store.globalIp(row) : store.globalUser(row);
+                if (seen.get(id)) {
+                    return null;
+                }
+                seen.set(id);
+                return dictionary.valueOf(id);
+            }
+        }, false);
+    }
+
+    static Stream<Event> events(List<LogStore> stores, RowFilter filter) {
+        Set<Event> seen = EnumSet.noneOf(Event.class);
+        return StreamSupport.stream(new RowSpliterator<Event>(stores, filter) {
+            @Override
+            Event value(LogStore store, int row) {
+                Event event = store.event(row);
+                return seen.add(event) ? event : null;
+            }
+
+            @Override
+            boolean isComplete() {
+                return seen.size() == EVENTS.length;
+            }
+        }, false);
+    }
+
+    static Stream<Status> statuses(List<LogStore> stores, RowFilter filter) {
+        Set<Status> seen = EnumSet.noneOf(Status.class);
+        return StreamSupport.stream(new RowSpliterator<Status>(stores, filter) {
+            @Override
+            Status value(LogStore store, int row) {
+                Status status = store.status(row);
+                return seen.add(status) ? status : null;
+            }
+
+            @Override
+            boolean isComplete() {
+                return seen.size() == STATUSES.length;
+            }
+        }, false);
+    }
+
+    /**
+     * Merges the date-ordered rows of all stores, so only the last date handed out has to be
+     * remembered to skip duplicates.
+     */
+    static Stream<Date> dates(List<LogStore> stores, RowFilter filter) {
+        return StreamSupport.stream(new Spliterators.AbstractSpliterator<Date>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL) {
+            private PriorityQueue<Head> heads;
+            private long last = Long.MIN_VALUE;
+            private boolean any;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super Date> action) {
+                if (heads == null) {
+                    heads = new PriorityQueue<>(Math.max(1, stores.size()));
+                    for (LogStore store : stores) {
+                        Head head = new Head(store, store.cursor(filter));
+                        if (head.advance()) {
+                            heads.add(head);
+                        }
+                    }
+                }
+                while (!heads.isEmpty()) {
+                    Head head = heads.poll();
+                    long date = head.date;
+                    if (head.advance()) {
+                        heads.add(head);
+                    }
+                    if (!any || date != last) {
+                        any = true;
+                        last = date;
+                        action.accept(new Date(date));
+                        return true;
+                    }
+                }
+                return false;
+            }
+        }, false);
+    }
+
+    private static final class Head implements Comparable<Head> {
+        private final LogStore store;
+        private final LogStore.Cursor cursor;
+        private long date;
+
+        Head(LogStore store, LogStore.Cursor cursor) {
+            this.store = store;
+            this.cursor = cursor;
+        }
+
+        boolean advance() {
+            int row = cursor.next();
+            if (row == -1) {
+                return false;
+            }
+            date = store.date(row);
+            return true;
+        }
+
+        @Override
+        public int compareTo(Head other) {
+            return Long.compare(date, other.date);
+        }
+    }
+
+    /**
+     * Walks the matching rows of one store after the other and hands out every non-null
+     * {@link #value}.
+     */
+    private abstract static class RowSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+        private final Iterator<LogStore> stores;
+        private final RowFilter filter;
+        private LogStore store;
+        private LogStore.Cursor cursor;
+
+        RowSpliterator(List<LogStore> stores, RowFilter filter) {
+            super(Long.MAX_VALUE, Spliterator.DISTINCT | Spliterator.NONNULL);
+            this.stores = stores.iterator();
+            this.filter = filter;
+        }
+
+        /**
+         * Returns the value to hand out for {@code row}, or null to skip it.
+         */
+        abstract T value(LogStore store, int row);
+
+        /**
+         * True once no further value can be new.
+         */
+        boolean isComplete() {
+            return false;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            while (!isComplete()) {
+                if (cursor == null) {
+                    if (!stores.hasNext()) {
+                        return false;
+                    }
+                    store = stores.next();
+                    cursor = store.cursor(filter);
+                }
+                int row = cursor.next();
+                if (row == -1) {
+                    cursor = null;
+                    continue;
+                }
+                T value = value(store, row);
+                if (value != null) {
+                    action.accept(value);
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package data;
+
+/**
+ * Evaluates the equality conditions of a filter over a block of up to 64 consecutive rows of the
+ * primitive columns of a {@link LogStore} and returns the matches as a bitmask: bit {@code i} is set
+ * if row {@code from + i} matches. Conditions equal to {@link RowFilter#ANY}, and the task if
+ * {@code anyTask}, are not tested.
+ * <p>
+ * {@link #get()} returns the {@link VectorScanKernel} when the {@code jdk.incubator.vector} module
+ * is available (run with {@code --add-modules jdk.incubator.vector}) and the scalar loop below
+ * otherwise; {@code -Ddata.scalarScan=true} forces the scalar one.
+ */
+class ScanKernel {
+    static final int BLOCK = 64;
+    private static final ScanKernel INSTANCE = load();
+
+    static ScanKernel get() {
+        return INSTANCE;
+    }
+
+    private static ScanKernel load() {
+        if (!Boolean.getBoolean("data.scalarScan") && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                if (VectorScanKernel.isSupported()) {
+                    return new VectorScanKernel();
+                }
+            } catch (LinkageError e) {
+                // Fall back to the scalar loop.
+            }
+        }
+        return new ScanKernel();
+    }
+
+    /**
+     * True if blocks are evaluated with SIMD instructions.
+     */
+    boolean isVectorized() {
+        return false;
+    }
+
+    /**
+     * Returns the matches among rows {@code [from, to)}, at most {@link #BLOCK} of them.
+     */
+    long match(byte[] events, byte[] statuses, int[] tasks, int[] ipIds, int[] userIds, int from, int to,
+               int event, int status, boolean anyTask, int task, int ip, int user) {
+        long word = to - from == BLOCK ? -1L : (1L << (to - from)) - 1;
+        if (event != RowFilter.ANY) {
+            word &= equal(events, from, to, (byte) event);
+        }
+        if (word != 0 && status != RowFilter.ANY) {
+            word &= equal(statuses, from, to, (byte) status);
+        }
+        if (word != 0 && !anyTask) {
+            word &= equal(tasks, from, to, task);
+        }
+        if (word != 0 && ip != RowFilter.ANY) {
+            word &= equal(ipIds, from, to, ip);
+        }
+        if (word != 0 && user != RowFilter.ANY) {
+            word &= equal(userIds, from, to, user);
+        }
+        return word;
+    }
+
+    /**
+     * {@link #match} on the columns of a store: heap columns go through the arrays, off-heap ones
+     * (always all of a store's columns) are tested row by row.
+     */
+    final long match(ByteColumn events, ByteColumn statuses, IntColumn tasks, IntColumn ipIds, IntColumn userIds,
+                     int from, int to, int event, int status, boolean anyTask, int task, int ip, int user) {
+        if (events.array() != null) {
+            return match(events.array(), statuses.array(), tasks.array(), ipIds.array(), userIds.array(), from, to,
+                    event, status, anyTask, task, ip, user);
+        }
+        long word = 0;
+        for (int row = from; row < to; row++) {
+            if ((event == RowFilter.ANY || events.get(row) == event)
+                    && (status == RowFilter.ANY || statuses.get(row) == status)
+                    && (anyTask || tasks.get(row) == task)
+                    && (ip == RowFilter.ANY || ipIds.get(row) == ip)
+                    && (user == RowFilter.ANY || userIds.get(row) == user)) {
+                word |= 1L << (row - from);
+            }
+        }
+        return word;
+    }
+
+    long equal(byte[] column, int from, int to, byte value) {
+        long word = 0;
+        for (int row = from; row < to; row++) {
+            if (column[row] == value) {
+                word |= 1L << (row - from);
+            }
+        }
+        return word;
+    }
+
+    long equal(int[] column, int from, int to, int value) {
+        long word = 0;
+        for (int row = from; row < to; row++) {
+            if (column[row] == value) {
+                word |= 1L << (row - from);
+            }
+        }
+        return word;
+    }
+}
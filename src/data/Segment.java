@@ -0,0 +1,132 @@
+package data;
+
+/**
+ * The records of one log file, or of the lines of one day appended to the log files later, together
+ * with the range of dates they cover. Queries skip segments outside their date range without touching the records.
+ * A segment read from a file can drop its store ({@link #evict()}) and is loaded again, from the
+ * snapshot or the file, by the next query that needs it; appended lines stay in memory.
+ */
+final class Segment {
+    /**
+     * Rough heap cost of a row: the columns, a posting list entry for each index and the rollup
+     * share.
+     */
+    private static final long BYTES_PER_ROW = 48;
+    /**
+     * Rough heap cost of a row of an off-heap store, which keeps the rollup share only; its native
+     * bytes are counted as they are.
+     */
+    private static final long OFF_HEAP_BYTES_PER_ROW = 8;
+    /**
+     * Rough heap cost of a dictionary value: the String, its map entry and the id mappings.
+     */
+    private static final long BYTES_PER_VALUE = 96;
+
+    private final LogReader.Range range;
+    private final long lastModified;
+    private final long minDate;
+    private final long maxDate;
+    private final int rows;
+    private volatile long bytes;
+    private volatile LogStore store;
+    private volatile long lastUsed;
+
+    /**
+     * A loaded segment. {@code range} is where its records can be read again, or null if they
+     * cannot and the segment has to stay loaded.
+     */
+    Segment(LogReader.Range range, long lastModified, LogStore store) {
+        this.range = range;
+        this.lastModified = lastModified;
+        this.rows = store.size();
+        this.minDate = rows == 0 ? Long.MAX_VALUE : store.date(0);
+        this.maxDate = rows == 0 ? Long.MIN_VALUE : store.date(rows - 1);
+        load(store);
+    }
+
+    /**
+     * A segment known from the snapshot table only; it is loaded by the first query that needs it.
+     */
+    Segment(LogReader.Range range, long lastModified, long minDate, long maxDate, int rows) {
+        this.range = range;
+        this.lastModified = lastModified;
+        this.minDate = minDate;
+        this.maxDate = maxDate;
+        this.rows = rows;
+    }
+
+    LogReader.Range range() {
+        return range;
+    }
+
+    long lastModified() {
+        return lastModified;
+    }
+
+    long minDate() {
+        return minDate;
+    }
+
+    long maxDate() {
+        return maxDate;
+    }
+
+    /**
+     * True if the segment may hold rows dated within {@code [after, before]}.
+     */
+    boolean overlaps(long after, long before) {
+        return minDate <= before && maxDate >= after;
+    }
+
+    /**
+     * True if every row is dated before {@code date}; an empty segment has no rows to keep.
+     */
+    boolean isOlderThan(long date) {
+        return maxDate < date;
+    }
+
+    /**
+     * Estimated heap size of the store, plus its native memory if it is off the heap, as of its
+     * last load.
+     */
+    long bytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns the store, or null if it is not loaded, and marks the segment as used.
+     */
+    LogStore store() {
+        LogStore current = store;
+        if (current != null) {
+            lastUsed = System.nanoTime();
+        }
+        return current;
+    }
+
+    boolean isLoaded() {
+        return store != null;
+    }
+
+    long lastUsed() {
+        return lastUsed;
+    }
+
+    void load(LogStore store) {
+        this.bytes = store.size() * (store.isOffHeap() ? OFF_HEAP_BYTES_PER_ROW : BYTES_PER_ROW) + store.offHeapBytes()
+                + (store.ips().size() + store.users().size()) * BYTES_PER_VALUE;
+        this.store = store;
+        this.lastUsed = System.nanoTime();
+    }
+
+    boolean isEvictable() {
+        return range != null && store != null;
+    }
+
+    /**
+     * Drops the store; queries that already hold it keep using it.
+     */
+    void evict() {
+        store = null;
+    }
+}
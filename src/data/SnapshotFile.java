@@ -0,0 +1,366 @@
+package data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary snapshot of parsed log files. Every entry holds the sealed {@link LogStore} of one source
+ * file (columns, dictionaries, posting lists and rollups) together with the size and modification
+ * time the file had when it was parsed; an entry is only used while both still match.
+ * <p>
+ * Layout, little-endian: a header ({@code MAGIC}, {@code VERSION}), the store blocks one after the
+ * other, a table of entries (file name, size, modification time, block offset and length, first and
+ * last date, row count) and a trailer with the table offset and {@code MAGIC} again. The table alone
+ * describes a file's records well enough to skip them; blocks are memory-mapped one at a time when
+ * they are loaded, and off-heap stores keep reading from that mapping.
+ */
+final class SnapshotFile {
+    static final String FILE_NAME = ".logparser.snapshot";
+
+    private static final int MAGIC = 0x4C505331;
+    private static final int VERSION = 3;
+    private static final int TRAILER_SIZE = Long.BYTES + Integer.BYTES;
+
+    /**
+     * A file to write, with either its store or its block in an existing snapshot, which is copied
+     * as is.
+     */
+    static final class Entry {
+        final String fileName;
+        final long size;
+        final long lastModified;
+        final LogStore store;
+        final SnapshotFile source;
+        final Block block;
+
+        Entry(String fileName, long size, long lastModified, LogStore store) {
+            this(fileName, size, lastModified, store, null, null);
+        }
+
+        Entry(String fileName, SnapshotFile source, Block block) {
+            this(fileName, block.size, block.lastModified, null, source, block);
+        }
+
+        private Entry(String fileName, long size, long lastModified, LogStore store, SnapshotFile source, Block block) {
+            this.fileName = fileName;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.store = store;
+            this.source = source;
+            this.block = block;
+        }
+    }
+
+    static final class Block {
+        final long size;
+        final long lastModified;
+        final long offset;
+        final long length;
+        final long minDate;
+        final long maxDate;
+        final int rows;
+
+        Block(long size, long lastModified, long offset, long length, long minDate, long maxDate, int rows) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.offset = offset;
+            this.length = length;
+            this.minDate = minDate;
+            this.maxDate = maxDate;
+            this.rows = rows;
+        }
+    }
+
+    private final Path path;
+    private final Map<String, Block> blocks;
+
+    private SnapshotFile(Path path, Map<String, Block> blocks) {
+        this.path = path;
+        this.blocks = blocks;
+    }
+
+    /**
+     * Opens the snapshot at {@code path}. A missing or unreadable snapshot behaves like an empty one.
+     */
+    static SnapshotFile open(Path path) {
+        Map<String, Block> blocks = new HashMap<>();
+        if (Files.isRegularFile(path)) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                readTable(channel, blocks);
+            } catch (IOException | RuntimeException e) {
+                // A damaged snapshot only costs a full parse.
+                blocks.clear();
+            }
+        }
+        return new SnapshotFile(path, blocks);
+    }
+
+    private static void readTable(FileChannel channel, Map<String, Block> blocks) throws IOException {
+        long fileSize = channel.size();
+        if (fileSize < 2 * Integer.BYTES + TRAILER_SIZE) {
+            return;
+        }
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, 2 * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer trailer = channel.map(FileChannel.MapMode.READ_ONLY, fileSize - TRAILER_SIZE, TRAILER_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            return;
+        }
+        long tableOffset = trailer.getLong();
+        if (trailer.getInt() != MAGIC) {
+            return;
+        }
+        ByteBuffer table = channel.map(FileChannel.MapMode.READ_ONLY, tableOffset, fileSize - TRAILER_SIZE - tableOffset)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        int count = table.getInt();
+        for (int i = 0; i < count; i++) {
+            String fileName = readString(table);
+            blocks.put(fileName, new Block(table.getLong(), table.getLong(), table.getLong(), table.getLong(),
+                    table.getLong(), table.getLong(), table.getInt()));
+        }
+    }
+
+    int size() {
+        return blocks.size();
+    }
+
+    /**
+     * Returns the block of {@code fileName}, or null if the snapshot has none for a file of this
+     * size and modification time.
+     */
+    Block block(String fileName, long size, long lastModified) {
+        Block block = blocks.get(fileName);
+        if (block == null || block.size != size || block.lastModified != lastModified) {
+            return null;
+        }
+        return block;
+    }
+
+    /**
+     * Returns the records of a block of this snapshot, or null if they cannot be read. An off-heap
+     * store keeps its columns and posting lists in a mapping of the block rather than copying them.
+     */
+    LogStore load(Block block, boolean offHeap) {
+        if (offHeap) {
+            NativeMemory memory = null;
+            try {
+                memory = NativeMemory.map(path, block.offset, block.length);
+                return LogStore.readFrom(memory.buffer(), memory);
+            } catch (IOException | RuntimeException e) {
+                if (memory != null) {
+                    memory.close();
+                }
+                return null;
+            }
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, block.offset, block.length);
+            return LogStore.readFrom(buffer.order(ByteOrder.LITTLE_ENDIAN), null);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the snapshot at {@code path} with {@code entries}. The new file is written next to the
+     * old one and moved into place, so readers never see a partial snapshot.
+     */
+    static void write(Path path, List<Entry> entries) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (Output out = new Output(FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            long[] offsets = new long[entries.size()];
+            long[] lengths = new long[entries.size()];
+            for (int i = 0; i < entries.size(); i++) {
+                Entry entry = entries.get(i);
+                offsets[i] = out.position();
+                if (entry.store != null) {
+                    entry.store.writeTo(out);
+                } else {
+                    out.copy(entry.source.path, entry.block.offset, entry.block.length);
+                }
+                lengths[i] = out.position() - offsets[i];
+            }
+            long tableOffset = out.position();
+            out.writeInt(entries.size());
+            for (int i = 0; i < entries.size(); i++) {
+                Entry entry = entries.get(i);
+                out.writeString(entry.fileName);
+                out.writeLong(entry.size);
+                out.writeLong(entry.lastModified);
+                out.writeLong(offsets[i]);
+                out.writeLong(lengths[i]);
+                if (entry.store != null) {
+                    int rows = entry.store.size();
+                    out.writeLong(rows == 0 ? Long.MAX_VALUE : entry.store.date(0));
+                    out.writeLong(rows == 0 ? Long.MIN_VALUE : entry.store.date(rows - 1));
+                    out.writeInt(rows);
+                } else {
+                    out.writeLong(entry.block.minDate);
+                    out.writeLong(entry.block.maxDate);
+                    out.writeInt(entry.block.rows);
+                }
+            }
+            out.writeLong(tableOffset);
+            out.writeInt(MAGIC);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static long[] readLongs(ByteBuffer buffer) {
+        long[] values = new long[buffer.getInt()];
+        buffer.asLongBuffer().get(values);
+        buffer.position(buffer.position() + values.length * Long.BYTES);
+        return values;
+    }
+
+    static int[] readInts(ByteBuffer buffer) {
+        int[] values = new int[buffer.getInt()];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + values.length * Integer.BYTES);
+        return values;
+    }
+
+    static byte[] readBytes(ByteBuffer buffer) {
+        byte[] values = new byte[buffer.getInt()];
+        buffer.get(values);
+        return values;
+    }
+
+    /**
+     * Buffered little-endian writer for the snapshot format; arrays are length-prefixed.
+     */
+    static final class Output implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        private long flushed;
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        long position() {
+            return flushed + buffer.position();
+        }
+
+        void writeInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void writeLong(long value) throws IOException {
+            ensure(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        void writeString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeBytes(bytes, bytes.length);
+        }
+
+        void writeLongs(long[] values, int length) throws IOException {
+            writeInt(length);
+            for (int from = 0; from < length; ) {
+                ensure(Long.BYTES);
+                int count = Math.min(length - from, buffer.remaining() / Long.BYTES);
+                buffer.asLongBuffer().put(values, from, count);
+                buffer.position(buffer.position() + count * Long.BYTES);
+                from += count;
+            }
+        }
+
+        void writeInts(int[] values, int length) throws IOException {
+            writeInt(length);
+            for (int from = 0; from < length; ) {
+                ensure(Integer.BYTES);
+                int count = Math.min(length - from, buffer.remaining() / Integer.BYTES);
+                buffer.asIntBuffer().put(values, from, count);
+                buffer.position(buffer.position() + count * Integer.BYTES);
+                from += count;
+            }
+        }
+
+        void writeBytes(byte[] values, int length) throws IOException {
+            writeInt(length);
+            for (int from = 0; from < length; ) {
+                ensure(1);
+                int count = Math.min(length - from, buffer.remaining());
+                buffer.put(values, from, count);
+                from += count;
+            }
+        }
+
+        /**
+         * Appends the remaining bytes of {@code bytes} as they are, without a length.
+         */
+        void writeRaw(ByteBuffer bytes) throws IOException {
+            while (bytes.hasRemaining()) {
+                ensure(1);
+                int count = Math.min(bytes.remaining(), buffer.remaining());
+                buffer.put(bytes.slice().limit(count));
+                bytes.position(bytes.position() + count);
+            }
+        }
+
+        /**
+         * Appends {@code length} bytes of another file, starting at {@code offset}.
+         */
+        void copy(Path file, long offset, long length) throws IOException {
+            flush();
+            try (FileChannel from = FileChannel.open(file, StandardOpenOption.READ)) {
+                long copied = 0;
+                while (copied < length) {
+                    long count = from.transferTo(offset + copied, length - copied, channel);
+                    if (count <= 0) {
+                        throw new IOException("Snapshot block ends early: " + file);
+                    }
+                    copied += count;
+                }
+                flushed += copied;
+            }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                flushed += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
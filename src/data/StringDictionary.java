@@ -0,0 +1,60 @@
+package data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps each distinct string to a dense int id, so columns can hold ints instead of String references.
+ */
+final class StringDictionary {
+    static final int NOT_FOUND = -1;
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private String[] values = new String[64];
+
+    int add(String value) {
+        Integer id = ids.get(value);
+        if (id != null) {
+            return id;
+        }
+        int newId = ids.size();
+        if (newId == values.length) {
+            values = Arrays.copyOf(values, newId * 2);
+        }
+        values[newId] = value;
+        ids.put(value, newId);
+        return newId;
+    }
+
+    int idOf(String value) {
+        Integer id = ids.get(value);
+        return id == null ? NOT_FOUND : id;
+    }
+
+    String valueOf(int id) {
+        return values[id];
+    }
+
+    int size() {
+        return ids.size();
+    }
+
+    void writeTo(SnapshotFile.Output out) throws IOException {
+        out.writeInt(size());
+        for (int id = 0; id < size(); id++) {
+            out.writeString(values[id]);
+        }
+    }
+
+    static StringDictionary readFrom(ByteBuffer buffer) {
+        StringDictionary dictionary = new StringDictionary();
+        int size = buffer.getInt();
+        for (int id = 0; id < size; id++) {
+            dictionary.add(SnapshotFile.readString(buffer));
+        }
+        return dictionary;
+    }
+}
@@ -0,0 +1,200 @@
+package data;
+
+import query.TaskFunnel;
+import query.TaskProgress;
+import query.UserSessions;
+
+import java.util.*;
+
+/**
+ * Answers {@link query.AnalyticsQuery} from the {@link TaskTimeline} of every store. Stores may
+ * overlap in dates, so first dates are merged as minimums and attempts to success are counted in a
+ * second round, once the first completion of each pair over all stores is known.
+ */
+final class TaskAnalytics {
+    /**
+     * Merged progress of one (user, task) pair.
+     */
+    private static final class Progress {
+        long firstSolve = Long.MAX_VALUE;
+        long firstDone = Long.MAX_VALUE;
+        int solves;
+        int dones;
+        int attemptsToSuccess;
+    }
+
+    private final List<LogStore> stores;
+    private final long after;
+    private final long before;
+    private final GlobalDictionary users;
+
+    TaskAnalytics(List<LogStore> stores, long after, long before, GlobalDictionary users) {
+        this.stores = stores;
+        this.after = after;
+        this.before = before;
+        this.users = users;
+    }
+
+    Map<String, Map<Integer, TaskProgress>> progress() {
+        Map<String, Map<Integer, TaskProgress>> progress = new HashMap<>();
+        merge().forEach((pair, merged) -> progress
+                .computeIfAbsent(users.valueOf((int) (pair >>> 32)), user -> new HashMap<>())
+                .put((int) (long) pair, new TaskProgress(merged.firstSolve, merged.firstDone, merged.solves,
+                        merged.dones, merged.attemptsToSuccess)));
+        return progress;
+    }
+
+    Map<Integer, TaskFunnel> funnels() {
+        Map<Integer, List<Progress>> byTask = new HashMap<>();
+        merge().forEach((pair, merged) -> byTask.computeIfAbsent((int) (long) pair, task -> new ArrayList<>()).add(merged));
+        Map<Integer, TaskFunnel> funnels = new HashMap<>();
+        byTask.forEach((task, pairs) -> {
+            int solvedUsers = 0;
+            int doneUsers = 0;
+            long solveAttempts = 0;
+            long attemptsToSuccess = 0;
+            long totalMillis = 0;
+            long[] millis = new long[pairs.size()];
+            int converted = 0;
+            for (Progress merged : pairs) {
+                solveAttempts += merged.solves;
+                if (merged.firstSolve != Long.MAX_VALUE) {
+                    solvedUsers++;
+                }
+                if (merged.firstDone != Long.MAX_VALUE) {
+                    doneUsers++;
+                }
+                if (merged.firstSolve != Long.MAX_VALUE && merged.firstDone != Long.MAX_VALUE
+                        && merged.firstDone >= merged.firstSolve) {
+                    millis[converted++] = merged.firstDone - merged.firstSolve;
+                    totalMillis += merged.firstDone - merged.firstSolve;
+                    attemptsToSuccess += merged.attemptsToSuccess;
+                }
+            }
+            Arrays.sort(millis, 0, converted);
+            long median = converted == 0 ? 0 : millis[(converted - 1) / 2];
+            funnels.put(task, new TaskFunnel(solvedUsers, doneUsers, converted, solveAttempts, attemptsToSuccess,
+                    totalMillis, median));
+        });
+        return funnels;
+    }
+
+    /**
+     * Merges the pairs of all stores, keyed by shared user id and task.
+     */
+    private Map<Long, Progress> merge() {
+        Map<Long, Progress> merged = new HashMap<>();
+        List<Progress[]> storePairs = new ArrayList<>(stores.size());
+        for (LogStore store : stores) {
+            TaskTimeline timeline = store.taskTimeline();
+            int[] globalUsers = store.globalUsers();
+            Progress[] pairs = new Progress[timeline.keyCount()];
+            for (int key = 0; key < pairs.length; key++) {
+                int solves = timeline.solves(key, after, before);
+                int dones = timeline.dones(key, after, before);
+                if (solves == 0 && dones == 0) {
+                    continue;
+                }
+                long pair = (long) globalUsers[timeline.user(key)] << 32 | (timeline.task(key) & 0xffffffffL);
+                Progress progress = merged.computeIfAbsent(pair, ignored -> new Progress());
+                progress.solves += solves;
+                progress.dones += dones;
+                progress.firstSolve = Math.min(progress.firstSolve, timeline.firstSolve(key, after, before));
+                progress.firstDone = Math.min(progress.firstDone, timeline.firstDone(key, after, before));
+                pairs[key] = progress;
+            }
+            storePairs.add(pairs);
+        }
+        for (int i = 0; i < stores.size(); i++) {
+            TaskTimeline timeline = stores.get(i).taskTimeline();
+            Progress[] pairs = storePairs.get(i);
+            for (int key = 0; key < pairs.length; key++) {
+                Progress progress = pairs[key];
+                if (progress != null && progress.firstDone != Long.MAX_VALUE) {
+                    progress.attemptsToSuccess += timeline.solves(key, after, progress.firstDone);
+                }
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Collects the LOGIN dates of every user from the timelines, then assigns the user's other
+     * rows to the session they fall into, which takes one walk over the posting list of each user
+     * who logged in.
+     */
+    Map<String, UserSessions> sessions() {
+        Map<Integer, long[]> logins = new HashMap<>();
+        for (LogStore store : stores) {
+            TaskTimeline timeline = store.taskTimeline();
+            int[] globalUsers = store.globalUsers();
+            for (int user = 0; user < globalUsers.length; user++) {
+                long[] dates = timeline.logins(user, after, before);
+                if (dates.length > 0) {
+                    logins.merge(globalUsers[user], dates, TaskAnalytics::concat);
+                }
+            }
+        }
+        Map<Integer, long[]> sessionEnds = new HashMap<>();
+        Map<Integer, long[]> sessionEvents = new HashMap<>();
+        logins.forEach((user, dates) -> {
+            Arrays.sort(dates);
+            sessionEnds.put(user, dates.clone());
+            sessionEvents.put(user, new long[dates.length]);
+        });
+        for (LogStore store : stores) {
+            int[] globalUsers = store.globalUsers();
+            for (int user = 0; user < globalUsers.length; user++) {
+                long[] starts = logins.get(globalUsers[user]);
+                if (starts == null) {
+                    continue;
+                }
+                long[] ends = sessionEnds.get(globalUsers[user]);
+                long[] events = sessionEvents.get(globalUsers[user]);
+                store.forEachUserDate(user, starts[0], before, date -> {
+                    int session = sessionOf(starts, date);
+                    ends[session] = Math.max(ends[session], date);
+                    events[session]++;
+                });
+            }
+        }
+        Map<String, UserSessions> sessions = new HashMap<>();
+        logins.forEach((user, starts) -> {
+            long[] ends = sessionEnds.get(user);
+            long events = 0;
+            long total = 0;
+            long longest = 0;
+            for (int session = 0; session < starts.length; session++) {
+                events += sessionEvents.get(user)[session];
+                total += ends[session] - starts[session];
+                longest = Math.max(longest, ends[session] - starts[session]);
+            }
+            sessions.put(users.valueOf(user), new UserSessions(starts.length, events, total, longest,
+                    starts[0], starts[starts.length - 1]));
+        });
+        return sessions;
+    }
+
+    /**
+     * Index of the last login at or before {@code date}; dates start at the first login.
+     */
+    private static int sessionOf(long[] starts, long date) {
+        int low = 0;
+        int high = starts.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (starts[middle] <= date) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low - 1;
+    }
+
+    private static long[] concat(long[] first, long[] second) {
+        long[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+}
@@ -0,0 +1,187 @@
+package data;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The SOLVE_TASK and DONE_TASK dates of every (user, task) pair and the LOGIN dates of every user
+ * of a sealed {@link LogStore}, packed like a {@link PostingIndex}: the dates of one pair or user
+ * are a contiguous, date-ordered slice of one array. First dates and attempt counts within any
+ * date range are binary searches on these slices, so task funnels and sessions never go back to
+ * the rows of the store, except for the event dates that close a session.
+ * <p>
+ * Users are ids of the store's own dictionary.
+ */
+final class TaskTimeline {
+    private static final byte SOLVE = (byte) Event.SOLVE_TASK.ordinal();
+    private static final byte DONE = (byte) Event.DONE_TASK.ordinal();
+    private static final byte LOGIN = (byte) Event.LOGIN.ordinal();
+
+    private final int[] keyUsers;
+    private final int[] keyTasks;
+    private final int[] solveOffsets;
+    private final long[] solveDates;
+    private final int[] doneOffsets;
+    private final long[] doneDates;
+    private final int[] loginOffsets;
+    private final long[] loginDates;
+
+    /**
+     * @param dates rows ordered by date
+     */
+    TaskTimeline(LongColumn dates, IntColumn userIds, ByteColumn events, IntColumn tasks, int size, int userCount) {
+        Map<Long, Integer> keys = new HashMap<>();
+        int[] rowKeys = new int[size];
+        int[] users = new int[16];
+        int[] taskNumbers = new int[16];
+        for (int row = 0; row < size; row++) {
+            rowKeys[row] = -1;
+            byte event = events.get(row);
+            if (event == SOLVE || event == DONE) {
+                int user = userIds.get(row);
+                int task = tasks.get(row);
+                long pair = (long) user << 32 | (task & 0xffffffffL);
+                Integer key = keys.get(pair);
+                if (key == null) {
+                    key = keys.size();
+                    keys.put(pair, key);
+                    if (key == users.length) {
+                        users = Arrays.copyOf(users, key * 2);
+                        taskNumbers = Arrays.copyOf(taskNumbers, key * 2);
+                    }
+                    users[key] = user;
+                    taskNumbers[key] = task;
+                }
+                rowKeys[row] = key;
+            }
+        }
+        int keyCount = keys.size();
+        keyUsers = Arrays.copyOf(users, keyCount);
+        keyTasks = Arrays.copyOf(taskNumbers, keyCount);
+        solveOffsets = new int[keyCount + 1];
+        doneOffsets = new int[keyCount + 1];
+        loginOffsets = new int[userCount + 1];
+        for (int row = 0; row < size; row++) {
+            byte event = events.get(row);
+            if (event == SOLVE) {
+                solveOffsets[rowKeys[row] + 1]++;
+            } else if (event == DONE) {
+                doneOffsets[rowKeys[row] + 1]++;
+            } else if (event == LOGIN) {
+                loginOffsets[userIds.get(row) + 1]++;
+            }
+        }
+        prefixSums(solveOffsets);
+        prefixSums(doneOffsets);
+        prefixSums(loginOffsets);
+        solveDates = new long[solveOffsets[keyCount]];
+        doneDates = new long[doneOffsets[keyCount]];
+        loginDates = new long[loginOffsets[userCount]];
+        int[] nextSolve = Arrays.copyOf(solveOffsets, keyCount);
+        int[] nextDone = Arrays.copyOf(doneOffsets, keyCount);
+        int[] nextLogin = Arrays.copyOf(loginOffsets, userCount);
+        for (int row = 0; row < size; row++) {
+            byte event = events.get(row);
+            if (event == SOLVE) {
+                solveDates[nextSolve[rowKeys[row]]++] = dates.get(row);
+            } else if (event == DONE) {
+                doneDates[nextDone[rowKeys[row]]++] = dates.get(row);
+            } else if (event == LOGIN) {
+                loginDates[nextLogin[userIds.get(row)]++] = dates.get(row);
+            }
+        }
+    }
+
+    private static void prefixSums(int[] offsets) {
+        for (int i = 1; i < offsets.length; i++) {
+            offsets[i] += offsets[i - 1];
+        }
+    }
+
+    /**
+     * Number of (user, task) pairs with at least one SOLVE_TASK or DONE_TASK row.
+     */
+    int keyCount() {
+        return keyUsers.length;
+    }
+
+    int user(int key) {
+        return keyUsers[key];
+    }
+
+    int task(int key) {
+        return keyTasks[key];
+    }
+
+    /**
+     * Date of the first SOLVE_TASK of the pair within {@code [after, before]}, or
+     * {@code Long.MAX_VALUE} if there is none.
+     */
+    long firstSolve(int key, long after, long before) {
+        return first(solveDates, solveOffsets[key], solveOffsets[key + 1], after, before);
+    }
+
+    long firstDone(int key, long after, long before) {
+        return first(doneDates, doneOffsets[key], doneOffsets[key + 1], after, before);
+    }
+
+    /**
+     * Number of SOLVE_TASK rows of the pair within {@code [after, before]}.
+     */
+    int solves(int key, long after, long before) {
+        return count(solveDates, solveOffsets[key], solveOffsets[key + 1], after, before);
+    }
+
+    int dones(int key, long after, long before) {
+        return count(doneDates, doneOffsets[key], doneOffsets[key + 1], after, before);
+    }
+
+    /**
+     * LOGIN dates of {@code user} within {@code [after, before]}, in date order.
+     */
+    long[] logins(int user, long after, long before) {
+        if (after > before) {
+            return new long[0];
+        }
+        int from = loginOffsets[user];
+        int to = loginOffsets[user + 1];
+        return Arrays.copyOfRange(loginDates, search(loginDates, from, to, after), searchAfter(loginDates, from, to, before));
+    }
+
+    private static long first(long[] dates, int from, int to, long after, long before) {
+        int position = search(dates, from, to, after);
+        return position < to && dates[position] <= before ? dates[position] : Long.MAX_VALUE;
+    }
+
+    private static int count(long[] dates, int from, int to, long after, long before) {
+        if (after > before) {
+            return 0;
+        }
+        return searchAfter(dates, from, to, before) - search(dates, from, to, after);
+    }
+
+    /**
+     * Position of the first date {@code >= date} in {@code dates[from, to)}.
+     */
+    private static int search(long[] dates, int from, int to, long date) {
+        return date == Long.MIN_VALUE ? from : searchAfter(dates, from, to, date - 1);
+    }
+
+    /**
+     * Position of the first date {@code > date} in {@code dates[from, to)}.
+     */
+    private static int searchAfter(long[] dates, int from, int to, long date) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (dates[middle] <= date) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,75 @@
+package data;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link ScanKernel} on the Vector API. A block is evaluated in strips of as many rows as the
+ * preferred int vector holds: every condition of the filter is compared on the strip and the lane
+ * masks are ANDed, so a strip costs one compare per condition and no branch per row. Byte columns
+ * are widened to ints rather than comparing bytes and casting the mask, which JDK 17 does not
+ * compile to vector instructions; for the same reason only a strip with a match turns its mask
+ * into bits. Rows past the last full strip go through the scalar loop. Only loaded through
+ * {@link ScanKernel#get()}.
+ */
+final class VectorScanKernel extends ScanKernel {
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Byte> BYTES =
+            VectorSpecies.of(byte.class, VectorShape.forBitSize(INTS.length() * Byte.SIZE));
+    private static final int STRIP = INTS.length();
+
+    /**
+     * True if the preferred vectors hold enough rows to beat the scalar loop.
+     */
+    static boolean isSupported() {
+        return STRIP >= 8;
+    }
+
+    @Override
+    boolean isVectorized() {
+        return true;
+    }
+
+    @Override
+    long match(byte[] events, byte[] statuses, int[] tasks, int[] ipIds, int[] userIds, int from, int to,
+               int event, int status, boolean anyTask, int task, int ip, int user) {
+        long word = 0;
+        int offset = 0;
+        int length = to - from;
+        for (; offset + STRIP <= length; offset += STRIP) {
+            int row = from + offset;
+            VectorMask<Integer> mask = INTS.maskAll(true);
+            if (event != RowFilter.ANY) {
+                mask = mask.and(widen(events, row).compare(VectorOperators.EQ, event));
+            }
+            if (status != RowFilter.ANY) {
+                mask = mask.and(widen(statuses, row).compare(VectorOperators.EQ, status));
+            }
+            if (!anyTask) {
+                mask = mask.and(IntVector.fromArray(INTS, tasks, row).compare(VectorOperators.EQ, task));
+            }
+            if (ip != RowFilter.ANY) {
+                mask = mask.and(IntVector.fromArray(INTS, ipIds, row).compare(VectorOperators.EQ, ip));
+            }
+            if (user != RowFilter.ANY) {
+                mask = mask.and(IntVector.fromArray(INTS, userIds, row).compare(VectorOperators.EQ, user));
+            }
+            if (mask.anyTrue()) {
+                word |= mask.toLong() << offset;
+            }
+        }
+        if (offset < length) {
+            word |= super.match(events, statuses, tasks, ipIds, userIds, from + offset, to, event, status, anyTask, task,
+                    ip, user) << offset;
+        }
+        return word;
+    }
+
+    private static IntVector widen(byte[] column, int row) {
+        return (IntVector) ByteVector.fromArray(BYTES, column, row).convertShape(VectorOperators.B2I, INTS, 0);
+    }
+}
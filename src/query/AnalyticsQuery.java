@@ -0,0 +1,33 @@
+package query;
+
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Per-user task progress, task funnels and login sessions within a date range, each in one call
+ * instead of one {@link DateQuery#getDateWhenUserSolvedTask} or {@link UserQuery#getDoneTaskUsers}
+ * call per user and task.
+ */
+public interface AnalyticsQuery {
+    /**
+     * Progress of every user on every task they solved or completed within the range.
+     *
+     * @return progress by user, then by task
+     */
+    Map<String, Map<Integer, TaskProgress>> getTaskProgress(Date after, Date before);
+
+    /**
+     * Funnel from solving to completing each task within the range.
+     *
+     * @return funnels by task
+     */
+    Map<Integer, TaskFunnel> getTaskFunnels(Date after, Date before);
+
+    /**
+     * Sessions of every user who logged in within the range. A session starts at a LOGIN and holds
+     * the user's events up to their next LOGIN.
+     *
+     * @return sessions by user
+     */
+    Map<String, UserSessions> getUserSessions(Date after, Date before);
+}
@@ -0,0 +1,15 @@
+package query;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+public interface BatchQuery {
+    /**
+     * Answers all {@code requests} over the same date range in a single pass over the records. Each
+     * result has the type and value the corresponding query method would return.
+     *
+     * @return results keyed by request, in request order
+     */
+    Map<BatchRequest, Object> executeBatch(Collection<BatchRequest> requests, Date after, Date before);
+}
@@ -0,0 +1,251 @@
+package query;
+
+import data.Event;
+import data.Status;
+
+import java.util.Objects;
+
+/**
+ * One query of a {@link BatchQuery}. There is a factory method for every query method of
+ * {@link IPQuery}, {@link UserQuery}, {@link DateQuery} and {@link EventQuery} that takes a date
+ * range; the range itself is shared by the whole batch.
+ */
+public final class BatchRequest {
+    public enum Kind {
+        NUMBER_OF_UNIQUE_IPS,
+        UNIQUE_IPS,
+        IPS_FOR_USER,
+        IPS_FOR_STATUS,
+        IPS_FOR_EVENT,
+        NUMBER_OF_USERS,
+        NUMBER_OF_USER_EVENTS,
+        USERS_FOR_IP,
+        LOGGED_USERS,
+        DOWNLOADED_PLUGIN_USERS,
+        WROTE_MESSAGE_USERS,
+        SOLVED_TASK_USERS,
+        DONE_TASK_USERS,
+        DATES_FOR_USER_AND_EVENT,
+        DATES_WHEN_SOMETHING_FAILED,
+        DATES_WHEN_ERROR_HAPPENED,
+        DATE_WHEN_USER_LOGGED_FIRST_TIME,
+        DATE_WHEN_USER_SOLVED_TASK,
+        DATE_WHEN_USER_DONE_TASK,
+        DATES_WHEN_USER_WROTE_MESSAGE,
+        DATES_WHEN_USER_DOWNLOADED_PLUGIN,
+        NUMBER_OF_ALL_EVENTS,
+        ALL_EVENTS,
+        EVENTS_FOR_IP,
+        EVENTS_FOR_USER,
+        FAILED_EVENTS,
+        ERROR_EVENTS,
+        NUMBER_OF_ATTEMPT_TO_SOLVE_TASK,
+        NUMBER_OF_SUCCESSFUL_ATTEMPT_TO_SOLVE_TASK,
+        ALL_SOLVED_TASKS_AND_THEIR_NUMBER,
+        ALL_DONE_TASKS_AND_THEIR_NUMBER
+    }
+
+    private final Kind kind;
+    private final String user;
+    private final String ip;
+    private final Event event;
+    private final Status status;
+    private final Integer task;
+
+    private BatchRequest(Kind kind, String user, String ip, Event event, Status status, Integer task) {
+        this.kind = kind;
+        this.user = user;
+        this.ip = ip;
+        this.event = event;
+        this.status = status;
+        this.task = task;
+    }
+
+    private static BatchRequest of(Kind kind) {
+        return new BatchRequest(kind, null, null, null, null, null);
+    }
+
+    public static BatchRequest numberOfUniqueIPs() {
+        return of(Kind.NUMBER_OF_UNIQUE_IPS);
+    }
+
+    public static BatchRequest uniqueIPs() {
+        return of(Kind.UNIQUE_IPS);
+    }
+
+    public static BatchRequest ipsForUser(String user) {
+        return new BatchRequest(Kind.IPS_FOR_USER, user, null, null, null, null);
+    }
+
+    public static BatchRequest ipsForStatus(Status status) {
+        return new BatchRequest(Kind.IPS_FOR_STATUS, null, null, null, status, null);
+    }
+
+    public static BatchRequest ipsForEvent(Event event) {
+        return new BatchRequest(Kind.IPS_FOR_EVENT, null, null, event, null, null);
+    }
+
+    public static BatchRequest numberOfUsers() {
+        return of(Kind.NUMBER_OF_USERS);
+    }
+
+    public static BatchRequest numberOfUserEvents(String user) {
+        return new BatchRequest(Kind.NUMBER_OF_USER_EVENTS, user, null, null, null, null);
+    }
+
+    public static BatchRequest usersForIP(String ip) {
+        return new BatchRequest(Kind.USERS_FOR_IP, null, ip, null, null, null);
+    }
+
+    public static BatchRequest loggedUsers() {
+        return of(Kind.LOGGED_USERS);
+    }
+
+    public static BatchRequest downloadedPluginUsers() {
+        return of(Kind.DOWNLOADED_PLUGIN_USERS);
+    }
+
+    public static BatchRequest wroteMessageUsers() {
+        return of(Kind.WROTE_MESSAGE_USERS);
+    }
+
+    public static BatchRequest solvedTaskUsers() {
+        return of(Kind.SOLVED_TASK_USERS);
+    }
+
+    public static BatchRequest solvedTaskUsers(int task) {
+        return new BatchRequest(Kind.SOLVED_TASK_USERS, null, null, null, null, task);
+    }
+
+    public static BatchRequest doneTaskUsers() {
+        return of(Kind.DONE_TASK_USERS);
+    }
+
+    public static BatchRequest doneTaskUsers(int task) {
+        return new BatchRequest(Kind.DONE_TASK_USERS, null, null, null, null, task);
+    }
+
+    public static BatchRequest datesForUserAndEvent(String user, Event event) {
+        return new BatchRequest(Kind.DATES_FOR_USER_AND_EVENT, user, null, event, null, null);
+    }
+
+    public static BatchRequest datesWhenSomethingFailed() {
+        return of(Kind.DATES_WHEN_SOMETHING_FAILED);
+    }
+
+    public static BatchRequest datesWhenErrorHappened() {
+        return of(Kind.DATES_WHEN_ERROR_HAPPENED);
+    }
+
+    public static BatchRequest dateWhenUserLoggedFirstTime(String user) {
+        return new BatchRequest(Kind.DATE_WHEN_USER_LOGGED_FIRST_TIME, user, null, null, null, null);
+    }
+
+    public static BatchRequest dateWhenUserSolvedTask(String user, int task) {
+        return new BatchRequest(Kind.DATE_WHEN_USER_SOLVED_TASK, user, null, null, null, task);
+    }
+
+    public static BatchRequest dateWhenUserDoneTask(String user, int task) {
+        return new BatchRequest(Kind.DATE_WHEN_USER_DONE_TASK, user, null, null, null, task);
+    }
+
+    public static BatchRequest datesWhenUserWroteMessage(String user) {
+        return new BatchRequest(Kind.DATES_WHEN_USER_WROTE_MESSAGE, user, null, null, null, null);
+    }
+
+    public static BatchRequest datesWhenUserDownloadedPlugin(String user) {
+        return new BatchRequest(Kind.DATES_WHEN_USER_DOWNLOADED_PLUGIN, user, null, null, null, null);
+    }
+
+    public static BatchRequest numberOfAllEvents() {
+        return of(Kind.NUMBER_OF_ALL_EVENTS);
+    }
+
+    public static BatchRequest allEvents() {
+        return of(Kind.ALL_EVENTS);
+    }
+
+    public static BatchRequest eventsForIP(String ip) {
+        return new BatchRequest(Kind.EVENTS_FOR_IP, null, ip, null, null, null);
+    }
+
+    public static BatchRequest eventsForUser(String user) {
+        return new BatchRequest(Kind.EVENTS_FOR_USER, user, null, null, null, null);
+    }
+
+    public static BatchRequest failedEvents() {
+        return of(Kind.FAILED_EVENTS);
+    }
+
+    public static BatchRequest errorEvents() {
+        return of(Kind.ERROR_EVENTS);
+    }
+
+    public static BatchRequest numberOfAttemptToSolveTask(int task) {
+        return new BatchRequest(Kind.NUMBER_OF_ATTEMPT_TO_SOLVE_TASK, null, null, null, null, task);
+    }
+
+    public static BatchRequest numberOfSuccessfulAttemptToSolveTask(int task) {
+        return new BatchRequest(Kind.NUMBER_OF_SUCCESSFUL_ATTEMPT_TO_SOLVE_TASK, null, null, null, null, task);
+    }
+
+    public static BatchRequest allSolvedTasksAndTheirNumber() {
+        return of(Kind.ALL_SOLVED_TASKS_AND_THEIR_NUMBER);
+    }
+
+    public static BatchRequest allDoneTasksAndTheirNumber() {
+        return of(Kind.ALL_DONE_TASKS_AND_THEIR_NUMBER);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public String getIP() {
+        return ip;
+    }
+
+    public Event getEvent() {
+        return event;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Task number, or null for requests that are not about a single task.
+     */
+    public Integer getTask() {
+        return task;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BatchRequest)) return false;
+        BatchRequest that = (BatchRequest) o;
+        return kind == that.kind && Objects.equals(user, that.user) && Objects.equals(ip, that.ip) &&
+                event == that.event && status == that.status && Objects.equals(task, that.task);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(kind, user, ip, event, status, task);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(kind.name());
+        if (user != null) builder.append(" user=").append(user);
+        if (ip != null) builder.append(" ip=").append(ip);
+        if (event != null) builder.append(" event=").append(event);
+        if (status != null) builder.append(" status=").append(status);
+        if (task != null) builder.append(" task=").append(task);
+        return builder.toString();
+    }
+}
@@ -0,0 +1,57 @@
+package query;
+
+import java.util.Objects;
+
+/**
+ * One value of a {@link TopKQuery} result with its number of matching records. Counts taken from
+ * sketches are lower bounds: the true count lies within {@code [getCount(), getCount() + getMaxError()]}.
+ */
+public final class HeavyHitter {
+    private final String value;
+    private final long count;
+    private final long maxError;
+
+    public HeavyHitter(String value, long count, long maxError) {
+        this.value = value;
+        this.count = count;
+        this.maxError = maxError;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMaxError() {
+        return maxError;
+    }
+
+    public boolean isExact() {
+        return maxError == 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof HeavyHitter)) {
+            return false;
+        }
+        HeavyHitter other = (HeavyHitter) o;
+        return count == other.count && maxError == other.maxError && value.equals(other.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(value, count, maxError);
+    }
+
+    @Override
+    public String toString() {
+        return maxError == 0 ? value + "=" + count : value + "=" + count + "(+" + maxError + ")";
+    }
+}
@@ -0,0 +1,19 @@
+package query;
+
+import java.util.Set;
+import java.util.stream.Stream;
+
+public interface PreparedQuery {
+    /**
+     * Runs the query with its {@code ?} placeholders replaced by {@code parameters}, in order. A
+     * parameter may be given as a String in query syntax or as a Date, Event or Status.
+     */
+    Set<?> execute(Object... parameters);
+
+    /**
+     * Like {@link #execute}, but streams the result, see {@link StreamQuery}.
+     */
+    Stream<?> stream(Object... parameters);
+
+    int getParameterCount();
+}
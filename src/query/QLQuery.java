@@ -4,4 +4,12 @@ import java.util.Set;
 
 public interface QLQuery {
     Set<?> execute(String query);
+
+    /**
+     * Parses {@code query} once for repeated execution. Values and dates may be written as
+     * {@code ?} placeholders, e.g. {@code get ip for user = ? and date between ? and ?}.
+     *
+     * @throws IllegalArgumentException if the query is not valid
+     */
+    PreparedQuery prepare(String query);
 }
@@ -0,0 +1,71 @@
+package query;
+
+import data.Event;
+import data.Status;
+
+import java.util.Date;
+import java.util.stream.Stream;
+
+/**
+ * Streaming variants of the {@code Set} queries of {@link IPQuery}, {@link UserQuery},
+ * {@link DateQuery}, {@link EventQuery} and {@link QLQuery}. Results are produced while the records
+ * are scanned, so the first elements are available right away and {@code limit}, {@code findFirst}
+ * and other short-circuiting operations end the scan early. Each stream yields the same distinct
+ * values the corresponding set would hold; dates come in ascending order.
+ * <p>
+ * A stream reads the records as they were when it was created and is meant for sequential use.
+ */
+public interface StreamQuery {
+    Stream<String> streamUniqueIPs(Date after, Date before);
+
+    Stream<String> streamIPsForUser(String user, Date after, Date before);
+
+    Stream<String> streamIPsForStatus(Status status, Date after, Date before);
+
+    Stream<String> streamIPsForEvent(Event event, Date after, Date before);
+
+    Stream<String> streamAllUsers();
+
+    Stream<String> streamUsersForIP(String ip, Date after, Date before);
+
+    Stream<String> streamLoggedUsers(Date after, Date before);
+
+    Stream<String> streamDownloadedPluginUsers(Date after, Date before);
+
+    Stream<String> streamWroteMessageUsers(Date after, Date before);
+
+    Stream<String> streamSolvedTaskUsers(Date after, Date before);
+
+    Stream<String> streamSolvedTaskUsers(Date after, Date before, int task);
+
+    Stream<String> streamDoneTaskUsers(Date after, Date before);
+
+    Stream<String> streamDoneTaskUsers(Date after, Date before, int task);
+
+    Stream<Date> streamDatesForUserAndEvent(String user, Event event, Date after, Date before);
+
+    Stream<Date> streamDatesWhenSomethingFailed(Date after, Date before);
+
+    Stream<Date> streamDatesWhenErrorHappened(Date after, Date before);
+
+    Stream<Date> streamDatesWhenUserWroteMessage(String user, Date after, Date before);
+
+    Stream<Date> streamDatesWhenUserDownloadedPlugin(String user, Date after, Date before);
+
+    Stream<Event> streamAllEvents(Date after, Date before);
+
+    Stream<Event> streamEventsForIP(String ip, Date after, Date before);
+
+    Stream<Event> streamEventsForUser(String user, Date after, Date before);
+
+    Stream<Event> streamFailedEvents(Date after, Date before);
+
+    Stream<Event> streamErrorEvents(Date after, Date before);
+
+    /**
+     * Streams the result of a QL query without placeholders.
+     *
+     * @throws IllegalArgumentException if the query is not valid or has {@code ?} placeholders
+     */
+    Stream<?> stream(String query);
+}
@@ -0,0 +1,23 @@
+package query;
+
+import data.Event;
+
+import java.util.Date;
+import java.util.Set;
+
+/**
+ * Queries over all IPv4 addresses of a subnet, given in CIDR notation such as {@code 10.20.0.0/16};
+ * a plain address stands for itself. IPs that are not canonical dotted-quad addresses belong to no
+ * subnet.
+ *
+ * @throws IllegalArgumentException from every method if the subnet is not valid CIDR notation
+ */
+public interface SubnetQuery {
+    Set<String> getIPsForSubnet(String cidr, Date after, Date before);
+
+    Set<String> getUsersForSubnet(String cidr, Date after, Date before);
+
+    Set<Event> getEventsForSubnet(String cidr, Date after, Date before);
+
+    int getNumberOfRecordsForSubnet(String cidr, Date after, Date before);
+}
@@ -0,0 +1,91 @@
+package query;
+
+/**
+ * How the users who worked on one task within a date range got from solving to completing it, see
+ * {@link AnalyticsQuery#getTaskFunnels}.
+ */
+public final class TaskFunnel {
+    private final int solvedUsers;
+    private final int doneUsers;
+    private final int convertedUsers;
+    private final long solveAttempts;
+    private final long attemptsToSuccess;
+    private final long totalMillisToComplete;
+    private final long medianMillisToComplete;
+
+    /**
+     * @param convertedUsers        users who solved the task and completed it afterwards
+     * @param attemptsToSuccess     sum of {@link TaskProgress#getAttemptsToSuccess()} over the converted users
+     * @param totalMillisToComplete sum of {@link TaskProgress#getMillisToComplete()} over the converted users
+     */
+    public TaskFunnel(int solvedUsers, int doneUsers, int convertedUsers, long solveAttempts, long attemptsToSuccess,
+                      long totalMillisToComplete, long medianMillisToComplete) {
+        this.solvedUsers = solvedUsers;
+        this.doneUsers = doneUsers;
+        this.convertedUsers = convertedUsers;
+        this.solveAttempts = solveAttempts;
+        this.attemptsToSuccess = attemptsToSuccess;
+        this.totalMillisToComplete = totalMillisToComplete;
+        this.medianMillisToComplete = medianMillisToComplete;
+    }
+
+    /**
+     * Same as the size of {@link UserQuery#getSolvedTaskUsers(java.util.Date, java.util.Date, int)}.
+     */
+    public int getSolvedUsers() {
+        return solvedUsers;
+    }
+
+    /**
+     * Same as the size of {@link UserQuery#getDoneTaskUsers(java.util.Date, java.util.Date, int)}.
+     */
+    public int getDoneUsers() {
+        return doneUsers;
+    }
+
+    /**
+     * Users who solved the task and completed it at or after their first solve.
+     */
+    public int getConvertedUsers() {
+        return convertedUsers;
+    }
+
+    /**
+     * Fraction of the users who solved the task that completed it, or 0 if nobody solved it.
+     */
+    public double getConversionRate() {
+        return solvedUsers == 0 ? 0 : (double) convertedUsers / solvedUsers;
+    }
+
+    /**
+     * Same as {@link EventQuery#getNumberOfAttemptToSolveTask}.
+     */
+    public long getSolveAttempts() {
+        return solveAttempts;
+    }
+
+    /**
+     * Mean SOLVE_TASK events per converted user up to completion, or 0 without converted users.
+     */
+    public double getMeanAttemptsToSuccess() {
+        return convertedUsers == 0 ? 0 : (double) attemptsToSuccess / convertedUsers;
+    }
+
+    /**
+     * Mean millis from first solve to first completion of the converted users, or 0 without any.
+     */
+    public long getMeanMillisToComplete() {
+        return convertedUsers == 0 ? 0 : totalMillisToComplete / convertedUsers;
+    }
+
+    public long getMedianMillisToComplete() {
+        return medianMillisToComplete;
+    }
+
+    @Override
+    public String toString() {
+        return "solved=" + solvedUsers + " done=" + doneUsers + " converted=" + convertedUsers
+                + " attempts=" + solveAttempts + " meanAttemptsToSuccess=" + getMeanAttemptsToSuccess()
+                + " meanMillisToComplete=" + getMeanMillisToComplete() + " medianMillisToComplete=" + medianMillisToComplete;
+    }
+}
@@ -0,0 +1,96 @@
+package query;
+
+import java.util.Date;
+import java.util.Objects;
+
+/**
+ * Progress of one user on one task within a date range, see {@link AnalyticsQuery#getTaskProgress}.
+ */
+public final class TaskProgress {
+    private static final long NONE = Long.MAX_VALUE;
+
+    private final long firstSolve;
+    private final long firstDone;
+    private final int solveAttempts;
+    private final int doneCount;
+    private final int attemptsToSuccess;
+
+    /**
+     * @param firstSolve        date of the first SOLVE_TASK, or {@code Long.MAX_VALUE} if there is none
+     * @param firstDone         date of the first DONE_TASK, or {@code Long.MAX_VALUE} if there is none
+     * @param attemptsToSuccess SOLVE_TASK events dated at or before the first DONE_TASK
+     */
+    public TaskProgress(long firstSolve, long firstDone, int solveAttempts, int doneCount, int attemptsToSuccess) {
+        this.firstSolve = firstSolve;
+        this.firstDone = firstDone;
+        this.solveAttempts = solveAttempts;
+        this.doneCount = doneCount;
+        this.attemptsToSuccess = attemptsToSuccess;
+    }
+
+    /**
+     * Same as {@link DateQuery#getDateWhenUserSolvedTask}: null if the user did not solve the task.
+     */
+    public Date getFirstSolve() {
+        return firstSolve == NONE ? null : new Date(firstSolve);
+    }
+
+    /**
+     * Same as {@link DateQuery#getDateWhenUserDoneTask}: null if the user did not complete the task.
+     */
+    public Date getFirstDone() {
+        return firstDone == NONE ? null : new Date(firstDone);
+    }
+
+    public int getSolveAttempts() {
+        return solveAttempts;
+    }
+
+    public int getDoneCount() {
+        return doneCount;
+    }
+
+    public boolean isCompleted() {
+        return firstDone != NONE;
+    }
+
+    /**
+     * SOLVE_TASK events up to and including the date of the first DONE_TASK, or 0 if the task was
+     * not completed.
+     */
+    public int getAttemptsToSuccess() {
+        return attemptsToSuccess;
+    }
+
+    /**
+     * Millis from the first SOLVE_TASK to the first DONE_TASK, or -1 unless both happened in that
+     * order.
+     */
+    public long getMillisToComplete() {
+        return firstSolve != NONE && firstDone != NONE && firstDone >= firstSolve ? firstDone - firstSolve : -1;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TaskProgress)) {
+            return false;
+        }
+        TaskProgress other = (TaskProgress) o;
+        return firstSolve == other.firstSolve && firstDone == other.firstDone && solveAttempts == other.solveAttempts
+                && doneCount == other.doneCount && attemptsToSuccess == other.attemptsToSuccess;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(firstSolve, firstDone, solveAttempts, doneCount, attemptsToSuccess);
+    }
+
+    @Override
+    public String toString() {
+        return "firstSolve=" + getFirstSolve() + " firstDone=" + getFirstDone() + " solveAttempts=" + solveAttempts
+                + " doneCount=" + doneCount + " attemptsToSuccess=" + attemptsToSuccess;
+    }
+}
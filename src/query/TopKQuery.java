@@ -0,0 +1,32 @@
+package query;
+
+import data.Event;
+import data.Status;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The IPs and users with the most records, such as the top 20 IPs by failed events. A null event
+ * or status matches every event or status.
+ * <p>
+ * Small ranges are counted exactly. Larger ones are answered from per-day frequent-items sketches
+ * of bounded size, so memory does not grow with the number of distinct IPs or users; each
+ * {@link HeavyHitter} then tells how far its count may be off, and a value whose records are less
+ * than about {@code 1 / MAX_K} of the matching records may be missing.
+ *
+ * @throws IllegalArgumentException from every method if {@code k} is not within {@code [1, MAX_K]}
+ */
+public interface TopKQuery {
+    int MAX_K = 256;
+
+    /**
+     * @return at most {@code k} IPs, most records first
+     */
+    List<HeavyHitter> getTopIPs(int k, Event event, Status status, Date after, Date before);
+
+    /**
+     * @return at most {@code k} users, most records first
+     */
+    List<HeavyHitter> getTopUsers(int k, Event event, Status status, Date after, Date before);
+}
@@ -0,0 +1,62 @@
+package query;
+
+import java.util.Date;
+
+/**
+ * The login sessions of one user within a date range, see {@link AnalyticsQuery#getUserSessions}.
+ */
+public final class UserSessions {
+    private final int sessions;
+    private final long events;
+    private final long totalMillis;
+    private final long longestMillis;
+    private final long firstLogin;
+    private final long lastLogin;
+
+    /**
+     * @param events      events of the sessions, their LOGIN included
+     * @param totalMillis sum over the sessions of the time from the LOGIN to the last event of the session
+     */
+    public UserSessions(int sessions, long events, long totalMillis, long longestMillis, long firstLogin, long lastLogin) {
+        this.sessions = sessions;
+        this.events = events;
+        this.totalMillis = totalMillis;
+        this.longestMillis = longestMillis;
+        this.firstLogin = firstLogin;
+        this.lastLogin = lastLogin;
+    }
+
+    public int getSessions() {
+        return sessions;
+    }
+
+    public long getEvents() {
+        return events;
+    }
+
+    public long getTotalMillis() {
+        return totalMillis;
+    }
+
+    public long getMeanMillis() {
+        return sessions == 0 ? 0 : totalMillis / sessions;
+    }
+
+    public long getLongestMillis() {
+        return longestMillis;
+    }
+
+    public Date getFirstLogin() {
+        return new Date(firstLogin);
+    }
+
+    public Date getLastLogin() {
+        return new Date(lastLogin);
+    }
+
+    @Override
+    public String toString() {
+        return "sessions=" + sessions + " events=" + events + " totalMillis=" + totalMillis + " longestMillis="
+                + longestMillis + " firstLogin=" + getFirstLogin() + " lastLogin=" + getLastLogin();
+    }
+}
@@ -0,0 +1,334 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import data.Event;
+import data.LogParser;
+import data.LogParserOptions;
+import data.Status;
+import query.BatchRequest;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Serves the queries of one shared {@link LogParser} over HTTP, using the server built into the
+ * JDK, so analysts can query a running parser with {@code curl} instead of each loading the logs
+ * themselves. Every response is {@code text/plain}, one value per line:
+ * <ul>
+ *     <li>{@code GET /ql?q=<query>} or {@code POST /ql} with the query as body runs a
+ *     {@link query.QLQuery} query and streams its rows while they are produced, as
+ *     {@link query.StreamQuery#stream(String)} does.</li>
+ *     <li>{@code GET /query?kind=<kind>&user=&ip=&event=&status=&task=&after=&before=} runs one
+ *     {@link BatchRequest.Kind}, that is, any typed query method of {@link query.IPQuery},
+ *     {@link query.UserQuery}, {@link query.DateQuery} or {@link query.EventQuery} that takes a
+ *     date range. Typed queries of concurrent requests are answered together, see
+ *     {@link RequestBatcher}.</li>
+ * </ul>
+ * Dates are written and read as in the log files, {@code dd.MM.yyyy HH:mm:ss}; task counts are
+ * written as {@code task<TAB>count}. A bad query or parameter gives 400 with the reason, a query
+ * over its timeout gives 504, and a closed parser gives 503. A query that runs out of time while
+ * its rows stream is cut off by closing the connection, so a client never mistakes a partial
+ * result for a complete one.
+ * <p>
+ * Closing the server does not close the parser.
+ */
+public final class QueryServer implements AutoCloseable {
+    private static final String DATE_PATTERN = "d.M.yyyy H:m:s";
+    private static final String OUTPUT_DATE_PATTERN = "dd.MM.yyyy HH:mm:ss";
+
+    /**
+     * Handles a request that must be answered before {@code deadline}, a {@link System#nanoTime()}.
+     */
+    private interface Handler {
+        void handle(HttpExchange exchange, long deadline) throws IOException, TimeoutException;
+    }
+
+    private final LogParser parser;
+    private final long timeoutNanos;
+    private final HttpServer http;
+    private final ExecutorService requestThreads;
+    private final ExecutorService batchThreads;
+    private final RequestBatcher batcher;
+
+    private QueryServer(LogParser parser, QueryServerOptions options) throws IOException {
+        this.parser = parser;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(options.getQueryTimeoutMillis());
+        requestThreads = Executors.newFixedThreadPool(options.getThreads(), daemonThreads("query-server-"));
+        batchThreads = Executors.newFixedThreadPool(options.getBatchThreads(), daemonThreads("query-batch-"));
+        batcher = new RequestBatcher(parser, batchThreads, options.getBatchThreads(), options.getMaxBatchSize());
+        http = HttpServer.create(new InetSocketAddress(options.getHost(), options.getPort()), 0);
+        http.setExecutor(requestThreads);
+        http.createContext("/ql", exchange -> handle(exchange, Set.of("GET", "POST"), this::ql));
+        http.createContext("/query", exchange -> handle(exchange, Set.of("GET"), this::typed));
+    }
+
+    /**
+     * Starts serving the queries of {@code parser}.
+     *
+     * @throws IOException if the address cannot be bound
+     */
+    public static QueryServer start(LogParser parser, QueryServerOptions options) throws IOException {
+        QueryServer server = new QueryServer(parser, options);
+        server.http.start();
+        return server;
+    }
+
+    /**
+     * Port the server listens on, useful when it was started on port 0.
+     */
+    public int getPort() {
+        return http.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting requests and drops the ones in progress.
+     */
+    @Override
+    public void close() {
+        http.stop(0);
+        requestThreads.shutdownNow();
+        batchThreads.shutdownNow();
+    }
+
+    /**
+     * {@code QueryServer <logDir> [port]} reads the logs in parallel, keeps tailing them and serves
+     * their queries on the loopback interface until the process is stopped.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: QueryServer <logDir> [port]");
+            System.exit(2);
+        }
+        int processors = Runtime.getRuntime().availableProcessors();
+        LogParser parser = new LogParser(Paths.get(args[0]), LogParserOptions.defaults()
+                .withParallelism(processors).withQueryParallelism(processors).withResultCache(1024));
+        parser.startTailing();
+        QueryServerOptions options = QueryServerOptions.defaults();
+        if (args.length > 1) {
+            options = options.withPort(Integer.parseInt(args[1]));
+        }
+        QueryServer server = start(parser, options);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            parser.close();
+        }));
+        System.out.println("Serving " + args[0] + " on http://" + options.getHost() + ":" + server.getPort());
+    }
+
+    private void handle(HttpExchange exchange, Set<String> methods, Handler handler) throws IOException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        if (!methods.contains(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Allow", String.join(", ", methods));
+            respond(exchange, 405, "unsupported method " + exchange.getRequestMethod());
+            exchange.close();
+            return;
+        }
+        try {
+            handler.handle(exchange, deadline);
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, e.getMessage());
+        } catch (TimeoutException e) {
+            respond(exchange, 504, "query timed out after " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms");
+        } catch (IllegalStateException | RejectedExecutionException e) {
+            respond(exchange, 503, e.getMessage());
+        }
+        // Other exceptions leave the exchange open, and the JDK server then closes the connection.
+        exchange.close();
+    }
+
+    private void ql(HttpExchange exchange, long deadline) throws IOException, TimeoutException {
+        String query = exchange.getRequestMethod().equals("POST")
+                ? new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8)
+                : parameters(exchange).get("q");
+        if (query == null || query.isBlank()) {
+            throw new IllegalArgumentException("missing query");
+        }
+        try (Stream<?> rows = parser.stream(query.trim())) {
+            Iterator<?> iterator = rows.iterator();
+            boolean more = iterator.hasNext();
+            if (System.nanoTime() - deadline > 0) {
+                throw new TimeoutException();
+            }
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, 0);
+            Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8));
+            DateFormat dates = new SimpleDateFormat(OUTPUT_DATE_PATTERN);
+            while (more) {
+                writeLine(out, iterator.next(), dates);
+                more = iterator.hasNext();
+                if (more && System.nanoTime() - deadline > 0) {
+                    throw new IOException("query timed out while streaming: " + query);
+                }
+            }
+            out.flush();
+        }
+    }
+
+    private void typed(HttpExchange exchange, long deadline) throws IOException, TimeoutException {
+        Map<String, String> parameters = parameters(exchange);
+        BatchRequest request = request(parameters);
+        Date after = date(parameters, "after");
+        Date before = date(parameters, "before");
+        CompletableFuture<Object> pending = batcher.submit(request, after, before);
+        Object result;
+        try {
+            result = pending.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            pending.cancel(false);
+            throw e;
+        } catch (InterruptedException e) {
+            pending.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("server closed");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8));
+        DateFormat dates = new SimpleDateFormat(OUTPUT_DATE_PATTERN);
+        if (result instanceof Collection) {
+            for (Object value : (Collection<?>) result) {
+                writeLine(out, value, dates);
+            }
+        } else if (result instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) result).entrySet()) {
+                out.write(entry.getKey() + "\t" + entry.getValue() + "\n");
+            }
+        } else if (result != null) {
+            writeLine(out, result, dates);
+        }
+        out.flush();
+    }
+
+    private static BatchRequest request(Map<String, String> parameters) {
+        BatchRequest.Kind kind = enumValue(BatchRequest.Kind.class, parameters, "kind");
+        return switch (kind) {
+            case NUMBER_OF_UNIQUE_IPS -> BatchRequest.numberOfUniqueIPs();
+            case UNIQUE_IPS -> BatchRequest.uniqueIPs();
+            case IPS_FOR_USER -> BatchRequest.ipsForUser(required(parameters, "user"));
+            case IPS_FOR_STATUS -> BatchRequest.ipsForStatus(enumValue(Status.class, parameters, "status"));
+            case IPS_FOR_EVENT -> BatchRequest.ipsForEvent(enumValue(Event.class, parameters, "event"));
+            case NUMBER_OF_USERS -> BatchRequest.numberOfUsers();
+            case NUMBER_OF_USER_EVENTS -> BatchRequest.numberOfUserEvents(required(parameters, "user"));
+            case USERS_FOR_IP -> BatchRequest.usersForIP(required(parameters, "ip"));
+            case LOGGED_USERS -> BatchRequest.loggedUsers();
+            case DOWNLOADED_PLUGIN_USERS -> BatchRequest.downloadedPluginUsers();
+            case WROTE_MESSAGE_USERS -> BatchRequest.wroteMessageUsers();
+            case SOLVED_TASK_USERS -> parameters.containsKey("task")
+                    ? BatchRequest.solvedTaskUsers(task(parameters)) : BatchRequest.solvedTaskUsers();
+            case DONE_TASK_USERS -> parameters.containsKey("task")
+                    ? BatchRequest.doneTaskUsers(task(parameters)) : BatchRequest.doneTaskUsers();
+            case DATES_FOR_USER_AND_EVENT -> BatchRequest.datesForUserAndEvent(required(parameters, "user"),
+                    enumValue(Event.class, parameters, "event"));
+            case DATES_WHEN_SOMETHING_FAILED -> BatchRequest.datesWhenSomethingFailed();
+            case DATES_WHEN_ERROR_HAPPENED -> BatchRequest.datesWhenErrorHappened();
+            case DATE_WHEN_USER_LOGGED_FIRST_TIME -> BatchRequest.dateWhenUserLoggedFirstTime(required(parameters, "user"));
+            case DATE_WHEN_USER_SOLVED_TASK -> BatchRequest.dateWhenUserSolvedTask(required(parameters, "user"), task(parameters));
+            case DATE_WHEN_USER_DONE_TASK -> BatchRequest.dateWhenUserDoneTask(required(parameters, "user"), task(parameters));
+            case DATES_WHEN_USER_WROTE_MESSAGE -> BatchRequest.datesWhenUserWroteMessage(required(parameters, "user"));
+            case DATES_WHEN_USER_DOWNLOADED_PLUGIN -> BatchRequest.datesWhenUserDownloadedPlugin(required(parameters, "user"));
+            case NUMBER_OF_ALL_EVENTS -> BatchRequest.numberOfAllEvents();
+            case ALL_EVENTS -> BatchRequest.allEvents();
+            case EVENTS_FOR_IP -> BatchRequest.eventsForIP(required(parameters, "ip"));
+            case EVENTS_FOR_USER -> BatchRequest.eventsForUser(required(parameters, "user"));
+            case FAILED_EVENTS -> BatchRequest.failedEvents();
+            case ERROR_EVENTS -> BatchRequest.errorEvents();
+            case NUMBER_OF_ATTEMPT_TO_SOLVE_TASK -> BatchRequest.numberOfAttemptToSolveTask(task(parameters));
+            case NUMBER_OF_SUCCESSFUL_ATTEMPT_TO_SOLVE_TASK -> BatchRequest.numberOfSuccessfulAttemptToSolveTask(task(parameters));
+            case ALL_SOLVED_TASKS_AND_THEIR_NUMBER -> BatchRequest.allSolvedTasksAndTheirNumber();
+            case ALL_DONE_TASKS_AND_THEIR_NUMBER -> BatchRequest.allDoneTasksAndTheirNumber();
+        };
+    }
+
+    private static String required(Map<String, String> parameters, String name) {
+        String value = parameters.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("missing parameter " + name);
+        }
+        return value;
+    }
+
+    private static int task(Map<String, String> parameters) {
+        String value = required(parameters, "task");
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid task: " + value, e);
+        }
+    }
+
+    private static <E extends Enum<E>> E enumValue(Class<E> type, Map<String, String> parameters, String name) {
+        String value = required(parameters, name);
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("invalid " + name + ": " + value, e);
+        }
+    }
+
+    /**
+     * A missing date leaves that end of the range open.
+     */
+    private static Date date(Map<String, String> parameters, String name) {
+        String value = parameters.get(name);
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return new SimpleDateFormat(DATE_PATTERN).parse(value.trim());
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("invalid " + name + ": " + value, e);
+        }
+    }
+
+    private static Map<String, String> parameters(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return parameters;
+        }
+        for (String parameter : query.split("&")) {
+            int equals = parameter.indexOf('=');
+            String name = equals < 0 ? parameter : parameter.substring(0, equals);
+            String value = equals < 0 ? "" : parameter.substring(equals + 1);
+            parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    private static void writeLine(Writer out, Object value, DateFormat dates) throws IOException {
+        out.write(value instanceof Date ? dates.format((Date) value) : String.valueOf(value));
+        out.write('\n');
+    }
+
+    private static void respond(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = ((message != null ? message : "") + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,121 @@
+package server;
+
+/**
+ * Tuning knobs for {@link QueryServer}. Instances are immutable; every {@code with...} method returns
+ * a modified copy.
+ */
+public final class QueryServerOptions {
+    private final String host;
+    private final int port;
+    private final int threads;
+    private final int batchThreads;
+    private final int maxBatchSize;
+    private final long queryTimeoutMillis;
+
+    private QueryServerOptions(String host, int port, int threads, int batchThreads, int maxBatchSize,
+                               long queryTimeoutMillis) {
+        if (host == null || host.isEmpty()) {
+            throw new IllegalArgumentException("host must not be empty");
+        }
+        if (port < 0 || port > 0xffff) {
+            throw new IllegalArgumentException("port out of range: " + port);
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        }
+        if (batchThreads < 1) {
+            throw new IllegalArgumentException("batchThreads must be positive: " + batchThreads);
+        }
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be positive: " + maxBatchSize);
+        }
+        if (queryTimeoutMillis < 1) {
+            throw new IllegalArgumentException("queryTimeoutMillis must be positive: " + queryTimeoutMillis);
+        }
+        this.host = host;
+        this.port = port;
+        this.threads = threads;
+        this.batchThreads = batchThreads;
+        this.maxBatchSize = maxBatchSize;
+        this.queryTimeoutMillis = queryTimeoutMillis;
+    }
+
+    /**
+     * Loopback only on port 8080, 64 request threads, one batch thread per processor, batches of
+     * up to 256 requests and a 30 second query timeout.
+     */
+    public static QueryServerOptions defaults() {
+        return new QueryServerOptions("127.0.0.1", 8080, 64, Runtime.getRuntime().availableProcessors(), 256, 30_000);
+    }
+
+    /**
+     * Address to listen on; {@code 0.0.0.0} makes the server reachable from other hosts.
+     */
+    public QueryServerOptions withHost(String host) {
+        return new QueryServerOptions(host, port, threads, batchThreads, maxBatchSize, queryTimeoutMillis);
+    }
+
+    /**
+     * Port to listen on; 0 picks a free one, see {@link QueryServer#getPort()}.
+     */
+    public QueryServerOptions withPort(int port) {
+        return new QueryServerOptions(host, port, threads, batchThreads, maxBatchSize, queryTimeoutMillis);
+    }
+
+    /**
+     * Number of requests handled at once. A request holds its thread while its result streams out
+     * or while it waits for its batch, so this bounds the number of open requests rather than the
+     * CPU used; further connections wait for a free thread.
+     */
+    public QueryServerOptions withThreads(int threads) {
+        return new QueryServerOptions(host, port, threads, batchThreads, maxBatchSize, queryTimeoutMillis);
+    }
+
+    /**
+     * Number of batches of typed queries executed at once. Requests that arrive while all batch
+     * threads are busy are queued and answered together by the next batch.
+     */
+    public QueryServerOptions withBatchThreads(int batchThreads) {
+        return new QueryServerOptions(host, port, threads, batchThreads, maxBatchSize, queryTimeoutMillis);
+    }
+
+    /**
+     * Largest number of queued typed queries taken into one batch.
+     */
+    public QueryServerOptions withMaxBatchSize(int maxBatchSize) {
+        return new QueryServerOptions(host, port, threads, batchThreads, maxBatchSize, queryTimeoutMillis);
+    }
+
+    /**
+     * Time a request may take before it is answered with 504, or, once its rows started
+     * streaming, cut off. Queries cannot be interrupted, so a timed out query still runs to the
+     * end of its scan; only its response is dropped.
+     */
+    public QueryServerOptions withQueryTimeout(long queryTimeoutMillis) {
+        return new QueryServerOptions(host, port, threads, batchThreads, maxBatchSize, queryTimeoutMillis);
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getBatchThreads() {
+        return batchThreads;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public long getQueryTimeoutMillis() {
+        return queryTimeoutMillis;
+    }
+}
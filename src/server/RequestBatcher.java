@@ -0,0 +1,99 @@
+package server;
+
+import query.BatchQuery;
+import query.BatchRequest;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Coalesces the typed queries of concurrent requests into {@link BatchQuery#executeBatch} calls.
+ * A request is queued and a batch thread is started if one is free; a batch thread takes all
+ * queued requests, up to the batch size, and answers the requests of each date range with one
+ * batch. An idle server thus answers a request right away, alone, while a busy one answers every
+ * request that arrived during the previous batch together.
+ */
+final class RequestBatcher {
+    private static final class Pending {
+        final BatchRequest request;
+        final List<Date> range;
+        final CompletableFuture<Object> result = new CompletableFuture<>();
+
+        Pending(BatchRequest request, Date after, Date before) {
+            this.request = request;
+            this.range = Arrays.asList(after, before);
+        }
+    }
+
+    private final BatchQuery parser;
+    private final ExecutorService executor;
+    private final int threads;
+    private final int maxBatchSize;
+    private final Deque<Pending> queue = new ArrayDeque<>();
+    private int running;
+
+    RequestBatcher(BatchQuery parser, ExecutorService executor, int threads, int maxBatchSize) {
+        this.parser = parser;
+        this.executor = executor;
+        this.threads = threads;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Queues {@code request}; a caller that gives up on the result may cancel it, which drops the
+     * request if its batch has not started yet.
+     */
+    CompletableFuture<Object> submit(BatchRequest request, Date after, Date before) {
+        Pending pending = new Pending(request, after, before);
+        synchronized (this) {
+            queue.add(pending);
+            if (running == threads) {
+                return pending.result;
+            }
+            running++;
+        }
+        executor.execute(this::drain);
+        return pending.result;
+    }
+
+    private void drain() {
+        while (true) {
+            List<Pending> batch = new ArrayList<>();
+            synchronized (this) {
+                while (batch.size() < maxBatchSize && !queue.isEmpty()) {
+                    Pending pending = queue.poll();
+                    if (!pending.result.isDone()) {
+                        batch.add(pending);
+                    }
+                }
+                if (batch.isEmpty()) {
+                    running--;
+                    return;
+                }
+            }
+            Map<List<Date>, List<Pending>> byRange = new LinkedHashMap<>();
+            for (Pending pending : batch) {
+                byRange.computeIfAbsent(pending.range, ignored -> new ArrayList<>()).add(pending);
+            }
+            byRange.forEach(this::execute);
+        }
+    }
+
+    private void execute(List<Date> range, List<Pending> requests) {
+        Set<BatchRequest> distinct = new LinkedHashSet<>();
+        for (Pending pending : requests) {
+            distinct.add(pending.request);
+        }
+        try {
+            Map<BatchRequest, Object> results = parser.executeBatch(distinct, range.get(0), range.get(1));
+            for (Pending pending : requests) {
+                pending.result.complete(results.get(pending.request));
+            }
+        } catch (RuntimeException e) {
+            for (Pending pending : requests) {
+                pending.result.completeExceptionally(e);
+            }
+        }
+    }
+}